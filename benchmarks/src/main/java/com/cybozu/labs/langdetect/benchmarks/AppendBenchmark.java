@@ -0,0 +1,53 @@
+package com.cybozu.labs.langdetect.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cybozu.labs.langdetect.Detector;
+
+/**
+ * Benchmark of {@link Detector#append(String)}: text cleaning and Latin character counting,
+ * on a reused detector.
+ *
+ * @author Alexis Meneses
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AppendBenchmark {
+    @Param({ "en", "fr", "de", "vi", "ru", "ar", "hi", "th", "ja", "zh-cn", "ko" })
+    public String language;
+
+    @Param({ "32", "256", "2048" })
+    public int length;
+
+    private Detector detector;
+    private String text;
+
+    @Setup
+    public void setUp() throws Exception {
+        detector = SharedFactory.get().create();
+        text = Corpus.text(language, length);
+    }
+
+    @Benchmark
+    public Detector append() {
+        detector.reset();
+        detector.append(text);
+        return detector;
+    }
+}
@@ -0,0 +1,98 @@
+package com.cybozu.labs.langdetect.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link Corpus} gives access to the fixed multilingual benchmark corpus,
+ * one paragraph per language, so that results are comparable between releases.
+ *
+ * @author Alexis Meneses
+ */
+public final class Corpus {
+    private static final String RESOURCE = "corpus.txt";
+    private static final Map<String, String> TEXTS = load();
+
+    private Corpus() {
+    }
+
+    private static Map<String, String> load() {
+        Map<String, String> texts = new LinkedHashMap<String, String>();
+        InputStream is = Corpus.class.getResourceAsStream(RESOURCE);
+        if (is == null) {
+            throw new IllegalStateException("Missing benchmark corpus: " + RESOURCE);
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(is, "utf-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() == 0 || line.startsWith("#")) continue;
+                    int tab = line.indexOf('\t');
+                    texts.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read benchmark corpus", e);
+        }
+        return Collections.unmodifiableMap(texts);
+    }
+
+    /**
+     * @return languages of the corpus, in file order
+     */
+    public static List<String> languages() {
+        return new ArrayList<String>(TEXTS.keySet());
+    }
+
+    /**
+     * @param language language of the corpus
+     * @return paragraph of the language
+     * @throws IllegalArgumentException if the language is not in the corpus
+     */
+    public static String text(String language) {
+        String text = TEXTS.get(language);
+        if (text == null) {
+            throw new IllegalArgumentException("No corpus text for " + language);
+        }
+        return text;
+    }
+
+    /**
+     * Get a text of a given length, made of the paragraph of a language repeated as needed then cut
+     * @param language language of the corpus
+     * @param length length of the text
+     * @return text of the language
+     * @throws IllegalArgumentException if the language is not in the corpus
+     */
+    public static String text(String language, int length) {
+        String paragraph = text(language);
+        StringBuilder text = new StringBuilder(length + paragraph.length());
+        while (text.length() < length) {
+            if (text.length() > 0) text.append(' ');
+            text.append(paragraph);
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+
+    /**
+     * @param length length of each text
+     * @return texts of every language of the corpus, in file order
+     */
+    public static String[] texts(int length) {
+        List<String> languages = languages();
+        String[] texts = new String[languages.size()];
+        for (int i = 0; i < texts.length; ++i) texts[i] = text(languages.get(i), length);
+        return texts;
+    }
+}
@@ -0,0 +1,76 @@
+package com.cybozu.labs.langdetect.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cybozu.labs.langdetect.Detector;
+import com.cybozu.labs.langdetect.LanguageProbability;
+
+/**
+ * Benchmark of a whole detection on a reused detector: {@link Detector#append(String)}
+ * then {@link Detector#getProbabilities()} (n-gram extraction and scoring).
+ * The cost of scoring alone is this benchmark minus {@link ExtractBenchmark} (which includes appending).
+ * <p>
+ * The {@code mode} parameter selects the detector options:
+ * {@code default}, {@code deterministic}, {@code adaptive} (2 to 7 trials),
+ * {@code shortText} (exact scoring up to 64 n-grams), {@code scriptFilter} and {@code pruning} (1e-10).
+ *
+ * @author Alexis Meneses
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DetectBenchmark {
+    @Param({ "en", "fr", "de", "vi", "ru", "ar", "hi", "th", "ja", "zh-cn", "ko" })
+    public String language;
+
+    @Param({ "32", "256", "2048" })
+    public int length;
+
+    @Param({ "default", "deterministic", "adaptive", "shortText", "scriptFilter", "pruning" })
+    public String mode;
+
+    private Detector detector;
+    private String text;
+
+    @Setup
+    public void setUp() throws Exception {
+        detector = SharedFactory.get().create();
+        if (mode.equals("deterministic")) {
+            detector.setDeterministic(true);
+        } else if (mode.equals("adaptive")) {
+            detector.setAdaptiveTrials(2, 7, 0.001);
+        } else if (mode.equals("shortText")) {
+            detector.setShortTextThreshold(64);
+        } else if (mode.equals("scriptFilter")) {
+            detector.setScriptFilter(true);
+        } else if (mode.equals("pruning")) {
+            detector.setPruningThreshold(1e-10);
+        } else if (!mode.equals("default")) {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        text = Corpus.text(language, length);
+    }
+
+    @Benchmark
+    public List<LanguageProbability> detect() {
+        detector.reset();
+        detector.append(text);
+        return detector.getProbabilities();
+    }
+}
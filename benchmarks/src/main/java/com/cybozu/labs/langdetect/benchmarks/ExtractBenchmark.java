@@ -0,0 +1,60 @@
+package com.cybozu.labs.langdetect.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cybozu.labs.langdetect.Detector;
+import com.cybozu.labs.langdetect.LanguageProbability;
+
+/**
+ * Benchmark of n-gram extraction, measured through the public API: {@link Detector#append(String)}
+ * then {@link Detector#getProbabilities()} on a detector restricted to a single language, with a single trial.
+ * The n-grams of the text are still built and looked up in the whole n-gram dictionary of the model,
+ * but scoring converges after a few n-grams, so the time is that of cleaning and extraction.
+ * The cost of extraction alone is this benchmark minus {@link AppendBenchmark}.
+ *
+ * @author Alexis Meneses
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExtractBenchmark {
+    @Param({ "en", "fr", "de", "vi", "ru", "ar", "hi", "th", "ja", "zh-cn", "ko" })
+    public String language;
+
+    @Param({ "32", "256", "2048" })
+    public int length;
+
+    private Detector detector;
+    private String text;
+
+    @Setup
+    public void setUp() throws Exception {
+        detector = new Detector(SharedFactory.get().getModel().subset(Collections.singletonList("en")));
+        detector.setTrials(1);
+        text = Corpus.text(language, length);
+    }
+
+    @Benchmark
+    public List<LanguageProbability> extract() {
+        detector.reset();
+        detector.append(text);
+        return detector.getProbabilities();
+    }
+}
@@ -0,0 +1,42 @@
+package com.cybozu.labs.langdetect.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cybozu.labs.langdetect.DetectorFactory;
+import com.cybozu.labs.langdetect.DetectorModel;
+
+/**
+ * Benchmark of loading the bundled profiles into a new factory, up to a model ready for detection.
+ * Each measurement is a single cold load.
+ *
+ * @author Alexis Meneses
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(3)
+public class LoadBenchmark {
+
+    @Benchmark
+    public DetectorModel loadDefaultProfiles() throws Exception {
+        DetectorFactory factory = DetectorFactory.newInstance();
+        factory.loadDefaultProfiles();
+        return factory.getModel();
+    }
+
+    @Benchmark
+    public DetectorModel loadShortMessageProfiles() throws Exception {
+        DetectorFactory factory = DetectorFactory.newInstance();
+        factory.loadShortMessageProfiles();
+        return factory.getModel();
+    }
+}
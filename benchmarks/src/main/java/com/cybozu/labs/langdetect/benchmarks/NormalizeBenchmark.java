@@ -0,0 +1,47 @@
+package com.cybozu.labs.langdetect.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cybozu.labs.langdetect.util.NGram;
+
+/**
+ * Benchmark of {@link NGram#normalize(char)} over every character of a text.
+ *
+ * @author Alexis Meneses
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NormalizeBenchmark {
+    @Param({ "en", "fr", "de", "vi", "ru", "ar", "hi", "th", "ja", "zh-cn", "ko" })
+    public String language;
+
+    private char[] text;
+
+    @Setup
+    public void setUp() {
+        text = Corpus.text(language, 256).toCharArray();
+    }
+
+    @Benchmark
+    public int normalize() {
+        int hash = 0;
+        for (char c : text) hash = hash * 31 + NGram.normalize(c);
+        return hash;
+    }
+}
@@ -0,0 +1,35 @@
+package com.cybozu.labs.langdetect.benchmarks;
+
+import java.io.IOException;
+
+import com.cybozu.labs.langdetect.DetectorFactory;
+
+/**
+ * {@link SharedFactory} holds a factory with the default profiles, loaded once per benchmark JVM.
+ * The random seed is fixed so that detection does the same work on every run.
+ *
+ * @author Alexis Meneses
+ */
+public final class SharedFactory {
+    /** random seed of the shared factory */
+    public static final long SEED = 0;
+
+    private static DetectorFactory factory = null;
+
+    private SharedFactory() {
+    }
+
+    /**
+     * @return factory with the default profiles
+     * @throws IOException if the profiles can't be loaded
+     */
+    public static synchronized DetectorFactory get() throws IOException {
+        if (factory == null) {
+            DetectorFactory loaded = DetectorFactory.newInstance();
+            loaded.loadDefaultProfiles();
+            loaded.setSeed(SEED);
+            factory = loaded;
+        }
+        return factory;
+    }
+}
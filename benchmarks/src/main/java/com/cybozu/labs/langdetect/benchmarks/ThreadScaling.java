@@ -0,0 +1,45 @@
+package com.cybozu.labs.langdetect.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run {@link ThroughputBenchmark} with 1, 2, 4... up to N threads and print the throughput per thread count.
+ * <pre>
+ * java -cp target/benchmarks.jar com.cybozu.labs.langdetect.benchmarks.ThreadScaling [max_threads]
+ * </pre>
+ * The maximum number of threads defaults to the number of available processors.
+ *
+ * @author Alexis Meneses
+ */
+public class ThreadScaling {
+
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) threadCounts.add(threads);
+        threadCounts.add(maxThreads);
+
+        List<String> lines = new ArrayList<String>();
+        for (int threads : threadCounts) {
+            Options options = new OptionsBuilder()
+                    .include(ThroughputBenchmark.class.getName())
+                    .threads(threads)
+                    .build();
+            Collection<RunResult> results = new Runner(options).run();
+            for (RunResult result : results) {
+                lines.add(String.format("%-8s %3d threads %12.1f %s", result.getParams().getBenchmark().replaceFirst(".*\\.", ""),
+                        threads, result.getPrimaryResult().getScore(), result.getPrimaryResult().getScoreUnit()));
+            }
+        }
+        System.out.println();
+        for (String line : lines) System.out.println(line);
+    }
+}
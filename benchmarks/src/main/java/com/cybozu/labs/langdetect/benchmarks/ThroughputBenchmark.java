@@ -0,0 +1,80 @@
+package com.cybozu.labs.langdetect.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cybozu.labs.langdetect.Detector;
+import com.cybozu.labs.langdetect.DetectorFactory;
+import com.cybozu.labs.langdetect.DetectorPool;
+
+/**
+ * Benchmark of the detection throughput of threads sharing one factory,
+ * each thread cycling through the texts of every language of the corpus.
+ * Run it with {@code -t <threads>}, or through {@link ThreadScaling} for 1 to N threads.
+ *
+ * @author Alexis Meneses
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThroughputBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        @Param({ "256" })
+        public int length;
+
+        DetectorFactory factory;
+        DetectorPool pool;
+        String[] texts;
+
+        @Setup
+        public void setUp() throws Exception {
+            factory = SharedFactory.get();
+            pool = factory.createPool();
+            texts = Corpus.texts(length);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = 0;
+
+        String next(String[] texts) {
+            String text = texts[next];
+            next = (next + 1) % texts.length;
+            return text;
+        }
+    }
+
+    /**
+     * Detection with the detector of the current thread in a pool
+     */
+    @Benchmark
+    public String pool(Shared shared, Cursor cursor) {
+        return shared.pool.detect(cursor.next(shared.texts));
+    }
+
+    /**
+     * Detection with a new detector for each text
+     */
+    @Benchmark
+    public String create(Shared shared, Cursor cursor) {
+        Detector detector = shared.factory.create();
+        detector.append(cursor.next(shared.texts));
+        return detector.detect();
+    }
+}
@@ -198,6 +198,30 @@ public class Command {
         }
     }
 
+    /**
+     * Compile language profiles into a binary model file (--compile option)
+     *
+     * <pre>
+     * usage: --compile -d [profile directory] [--float] [--sparse] [model file]
+     * </pre>
+     *
+     */
+    private void compileProfiles() {
+        if (arglist.size() != 1) {
+            System.err.println("Need to specify model file path");
+            System.exit(1);
+        }
+        try {
+            DetectorModel model = GenProfile.compileProfiles(new File(get("directory")), new File(arglist.get(0)),
+                    hasOpt("--float"), hasOpt("--sparse"));
+            System.out.println(arglist.get(0) + ": " + model.getLangList().size() + " languages, "
+                    + model.getNGramCount() + " n-grams");
+        } catch (IOException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
     /**
      * Language detection test for each file (--detectlang option)
      *
@@ -248,6 +272,7 @@ public class Command {
             BufferedReader is = null;
             try {
                 is = new BufferedReader(new InputStreamReader(new FileInputStream(filename), "utf-8"));
+                Detector detector = detectorFactory.create(getDouble("alpha", DEFAULT_ALPHA));
                 while (is.ready()) {
                     String line = is.readLine();
                     int idx = line.indexOf('\t');
@@ -255,7 +280,7 @@ public class Command {
                     String correctLang = line.substring(0, idx);
                     String text = line.substring(idx + 1);
 
-                    Detector detector = detectorFactory.create(getDouble("alpha", DEFAULT_ALPHA));
+                    detector.reset();
                     detector.append(text);
                     String lang = "";
                     try {
@@ -323,6 +348,9 @@ public class Command {
         System.out.println("Generate some profiles from wikipedia abstract XMLs:");
         System.out.println("  --genprofile -d <abstracts_directory> <2 letter language code(s)>");
         System.out.println();
+        System.out.println("Compile profiles into a binary model file:");
+        System.out.println("  --compile -d <profile_directory> [--float] [--sparse] <model_file>");
+        System.out.println();
         System.out.println("Run a batch test and output precision:");
         System.out.println(" --batchtest [-d <profile_directory>] [-a <alpha>] [-s <seed>] <test_data_file(s)>");
         System.out.println();
@@ -345,6 +373,8 @@ public class Command {
             command.generateProfile();
         } else if (command.hasOpt("--genprofile-text")) {
             command.generateProfileFromText();
+        } else if (command.hasOpt("--compile")) {
+            command.compileProfiles();
         } else if (command.hasOpt("--detectlang")) {
             command.detectLang();
         } else if (command.hasOpt("--batchtest")) {
@@ -0,0 +1,200 @@
+package com.cybozu.labs.langdetect;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cybozu.labs.langdetect.util.LangProbMatrix;
+
+/**
+ * {@link DetectionCache} is a bounded, thread-safe cache of detection results
+ * with least recently used eviction.
+ * <p>
+ * Large caches are split into up to {@value #MAX_SEGMENTS} segments by key hash, each with its own lock
+ * and its own share of the entries, so that concurrent detections don't contend on a single lock.
+ * Eviction is then least recently used within each segment. Caches of less than
+ * {@value #MIN_SEGMENT_SIZE} times two entries have a single segment.
+ * <p>
+ * A cache is enabled on a factory with {@link DetectorFactory#setCacheSize(int)}
+ * and shared by the detectors it creates. Results are keyed by the cleaned text
+ * and by the detection parameters (smoothing, prior map, random seed and trial mode).
+ * The cache only holds the results of the model currently compiled by the factory:
+ * it is emptied when the factory compiles a new model (after profiles are loaded or cleared
+ * or model options are changed), and the results of detectors still using an older model
+ * are neither looked up nor cached, nor counted in the statistics; neither are those of
+ * detectors on a subset of the languages ({@link DetectorModel#subset(java.util.List)}).
+ * Models differing only by their random seed share the same results, the seed being part of the key.
+ *
+ * @see DetectorFactory#setCacheSize(int)
+ *
+ * @author Alexis Meneses
+ */
+public class DetectionCache {
+    /** maximum number of segments */
+    static final int MAX_SEGMENTS = 16;
+    /** minimum number of entries per segment */
+    static final int MIN_SEGMENT_SIZE = 64;
+
+    private final int maxEntries;
+    private final Segment[] segments;
+    /** probabilities of the current model, which results are cached */
+    private volatile LangProbMatrix matrix = null;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Access ordered map of a share of the entries, guarded by its own lock
+     */
+    private static final class Segment extends LinkedHashMap<String, double[]> {
+        private static final long serialVersionUID = 1L;
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param maxEntries maximum number of cached results
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public DetectionCache(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive.");
+        }
+        this.maxEntries = maxEntries;
+        int count = 1;
+        while (count < MAX_SEGMENTS && maxEntries / (count * 2) >= MIN_SEGMENT_SIZE) count *= 2;
+        segments = new Segment[count];
+        for (int i = 0; i < count; ++i) {
+            segments[i] = new Segment(maxEntries / count + (i < maxEntries % count ? 1 : 0));
+        }
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    /**
+     * @param model model of a detector
+     * @return true if the results of the model are cached, i.e. it is the current model of the factory
+     */
+    boolean caches(DetectorModel model) {
+        return matrix == model.matrix;
+    }
+
+    /**
+     * Look up the language probabilities of a text
+     * @param model model the result must have been computed with
+     * @param key text and detection parameters
+     * @return language probabilities (not to be modified), or null if not cached
+     */
+    double[] get(DetectorModel model, String key) {
+        // other models are not cached: not a miss
+        if (matrix != model.matrix) return null;
+        Segment segment = segmentFor(key);
+        double[] prob;
+        synchronized (segment) {
+            prob = segment.get(key);
+        }
+        if (prob != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return prob;
+    }
+
+    /**
+     * Cache the language probabilities of a text
+     * @param model model the result was computed with
+     * @param key text and detection parameters
+     * @param prob language probabilities (not modified afterwards)
+     */
+    void put(DetectorModel model, String key, double[] prob) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            // results of a stale model are dropped (checked under the lock setModel clears the segment with)
+            if (matrix == model.matrix) segment.put(key, prob);
+        }
+    }
+
+    /**
+     * Cache the results of a newly compiled model from now on, removing those of the previous one
+     * @param matrix probabilities of the current model of the factory (null while it is not compiled)
+     */
+    synchronized void setModel(LangProbMatrix matrix) {
+        if (this.matrix != matrix) {
+            this.matrix = matrix;
+            clear();
+        }
+    }
+
+    /**
+     * Remove all cached results (statistics are kept)
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return maximum number of cached results
+     */
+    public int getMaxSize() {
+        return maxEntries;
+    }
+
+    /**
+     * @return number of cached results
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of detections answered from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of detections not found in the cache
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return ratio of detections answered from the cache (0 if none)
+     */
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "DetectionCache[size=" + size() + "/" + maxEntries + ", hits=" + hits.get() + ", misses=" + misses.get() + "]";
+    }
+}
@@ -0,0 +1,36 @@
+package com.cybozu.labs.langdetect;
+
+/**
+ * {@link DetectionListener} receives instrumentation data from detectors and factories,
+ * e.g. to feed a metrics system.
+ * <p>
+ * A listener is set with {@link DetectorFactory#setDetectionListener(DetectionListener)},
+ * which also applies to the detectors and pools created by the factory afterwards,
+ * or with {@link Detector#setDetectionListener(DetectionListener)}.
+ * This class is a no-op listener: subclasses override the methods they need.
+ * Listeners are called from the detecting or loading threads, so they must be thread-safe
+ * if they are shared.
+ * <p>
+ * When no listener is set (the default), nothing is measured.
+ *
+ * @author Alexis Meneses
+ */
+public class DetectionListener {
+
+    /**
+     * Called after each successful detection, by the first call to {@link Detector#getProbabilities()}
+     * (or {@link Detector#detect()}) for a text.
+     * @param metrics timings and statistics of the detection
+     */
+    public void detected(DetectionMetrics metrics) {
+    }
+
+    /**
+     * Called after profiles are loaded in a factory
+     * ({@code loadDefaultProfiles}, {@code loadProfiles}, {@code loadModel}...).
+     * @param profiles number of loaded profiles
+     * @param nanos loading time in nanoseconds (reading, decoding and adding the profiles)
+     */
+    public void profilesLoaded(int profiles, long nanos) {
+    }
+}
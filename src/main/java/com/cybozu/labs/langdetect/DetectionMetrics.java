@@ -0,0 +1,126 @@
+package com.cybozu.labs.langdetect;
+
+/**
+ * {@link DetectionMetrics} holds the timings and statistics of one detection,
+ * reported to a {@link DetectionListener}.
+ * <p>
+ * Timings are in nanoseconds, measured with {@link System#nanoTime()}.
+ * When the result was found in the factory cache, extraction and scoring are skipped
+ * and their timings and counts are zero.
+ *
+ * @see DetectionListener#detected(DetectionMetrics)
+ *
+ * @author Alexis Meneses
+ */
+public class DetectionMetrics {
+    private final int textLength;
+    private final int extractedLength;
+    private final int ngramCount;
+    private final int trials;
+    private final int iterations;
+    private final boolean cached;
+    private final long cleaningNanos;
+    private final long extractionNanos;
+    private final long scoringNanos;
+    private final long sortingNanos;
+
+    DetectionMetrics(int textLength, int extractedLength, int ngramCount, int trials, int iterations, boolean cached,
+            long cleaningNanos, long extractionNanos, long scoringNanos, long sortingNanos) {
+        this.textLength = textLength;
+        this.extractedLength = extractedLength;
+        this.ngramCount = ngramCount;
+        this.trials = trials;
+        this.iterations = iterations;
+        this.cached = cached;
+        this.cleaningNanos = cleaningNanos;
+        this.extractionNanos = extractionNanos;
+        this.scoringNanos = scoringNanos;
+        this.sortingNanos = sortingNanos;
+    }
+
+    /**
+     * @return length of the target text, after truncation to the max text length
+     */
+    public int getTextLength() {
+        return textLength;
+    }
+
+    /**
+     * @return length of the text n-grams were extracted from
+     *         (shorter than the target text if Latin characters were removed from a non-Latin text)
+     */
+    public int getExtractedLength() {
+        return extractedLength;
+    }
+
+    /**
+     * @return number of extracted n-grams found in the profiles
+     */
+    public int getNGramCount() {
+        return ngramCount;
+    }
+
+    /**
+     * @return number of extracted n-grams found in the profiles per extracted character (0 if none)
+     */
+    public double getNGramsPerCharacter() {
+        return extractedLength == 0 ? 0 : (double) ngramCount / extractedLength;
+    }
+
+    /**
+     * @return number of random sampling trials (0 with exact scoring)
+     */
+    public int getTrials() {
+        return trials;
+    }
+
+    /**
+     * @return total number of sampled n-grams over all trials
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return true if the result was found in the factory cache
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * @return time spent cleaning the text, when appending it and before extraction
+     */
+    public long getCleaningNanos() {
+        return cleaningNanos;
+    }
+
+    /**
+     * @return time spent extracting n-grams
+     */
+    public long getExtractionNanos() {
+        return extractionNanos;
+    }
+
+    /**
+     * @return time spent scoring languages
+     */
+    public long getScoringNanos() {
+        return scoringNanos;
+    }
+
+    /**
+     * @return time spent sorting the language candidates
+     */
+    public long getSortingNanos() {
+        return sortingNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "DetectionMetrics[text=" + textLength + ", extracted=" + extractedLength + ", ngrams=" + ngramCount
+                + ", trials=" + trials + ", iterations=" + iterations + ", cached=" + cached
+                + ", cleaning=" + cleaningNanos + "ns, extraction=" + extractionNanos + "ns, scoring=" + scoringNanos
+                + "ns, sorting=" + sortingNanos + "ns]";
+    }
+}
@@ -0,0 +1,71 @@
+package com.cybozu.labs.langdetect;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link DetectionResult} is the outcome of the detection of one text in a batch.
+ * <p>
+ * It holds either the language candidates of the text or the exception raised
+ * while detecting it (typically a {@link NoFeatureInTextException}),
+ * so that the failure of one text doesn't abort the whole batch.
+ *
+ * @see DetectorPool#detectAll(List, java.util.concurrent.ExecutorService)
+ * @see DetectorFactory#detectAll(List)
+ *
+ * @author Alexis Meneses
+ */
+public class DetectionResult {
+    private static final String UNKNOWN_LANG = "unknown";
+
+    private final List<LanguageProbability> probabilities;
+    private final RuntimeException error;
+
+    DetectionResult(List<LanguageProbability> probabilities) {
+        this.probabilities = Collections.unmodifiableList(probabilities);
+        this.error = null;
+    }
+
+    DetectionResult(RuntimeException error) {
+        this.probabilities = Collections.emptyList();
+        this.error = error;
+    }
+
+    /**
+     * @return true if the detection succeeded
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return the exception raised by the detection, or null if it succeeded
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    /**
+     * @return possible languages list (whose probabilities are over PROB_THRESHOLD, ordered by decreasing probabilities),
+     *         empty if the detection failed
+     * @see Detector#getProbabilities()
+     */
+    public List<LanguageProbability> getProbabilities() {
+        return probabilities;
+    }
+
+    /**
+     * @return detected language name which has most probability ("unknown" if none or if the detection failed)
+     * @see Detector#detect()
+     */
+    public String getLanguage() {
+        if (probabilities.size() > 0) return probabilities.get(0).getLanguage();
+        return UNKNOWN_LANG;
+    }
+
+    @Override
+    public String toString() {
+        if (error != null) return "error:" + error.getMessage();
+        return probabilities.toString();
+    }
+}
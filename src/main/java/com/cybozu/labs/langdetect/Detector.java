@@ -2,17 +2,26 @@ package com.cybozu.labs.langdetect;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.lang.Character.UnicodeBlock;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Formatter;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.regex.Pattern;
 
+import com.cybozu.labs.langdetect.util.CharScript;
+import com.cybozu.labs.langdetect.util.LangProbMatrix;
 import com.cybozu.labs.langdetect.util.NGram;
+import com.cybozu.labs.langdetect.util.NGramTable;
+import com.cybozu.labs.langdetect.util.ScoringKernels;
+import com.cybozu.labs.langdetect.util.TextCleaner;
 
 /**
  * {@link Detector} class is to detect language from specified text.
@@ -41,22 +50,66 @@ public class Detector {
     private static final double CONV_THRESHOLD = 0.99999;
     private static final int BASE_FREQ = 10000;
     private static final String UNKNOWN_LANG = "unknown";
+    private static final int DECODE_CHUNK = 1024;
+    /** minimum share of the letters of the text for a script to restrict the candidate languages */
+    private static final double SCRIPT_SHARE = 0.1;
 
-    private static final Pattern URL_REGEX = Pattern.compile("https?://[-_.?&~;+=/#0-9A-Za-z]{1,2076}");
-    private static final Pattern MAIL_REGEX = Pattern.compile("[-_.0-9A-Za-z]{1,64}@[-_0-9A-Za-z]{1,255}[-_.0-9A-Za-z]{1,255}");
+    private final DetectorModel model;
+    private final NGramTable wordIds;
+    private final LangProbMatrix wordLangProb;
+    private final List<String> langlist;
 
-    private final HashMap<String, double[]> wordLangProbMap;
-    private final ArrayList<String> langlist;
+    private final StringBuilder text;
+    private final TextCleaner cleaner = new TextCleaner();
+    private final double[] langprob;
+    private boolean detected = false;
 
-    private StringBuilder text;
-    private double[] langprob = null;
+    private final NGram ngram = new NGram();
+    private int[] ngrams = new int[256];
+    private final double[] trialProb;
+    private final int[] candidates;
+    private int candidateCount;
+    private final int[] active;
+    private int activeCount;
+    private int[] scriptHistogram = null;
+    private final Random rand = new Random();
 
     private double alpha = ALPHA_DEFAULT;
     private int n_trial = 7;
+    private int min_trial = 0;
+    private double trial_tolerance = 0;
     private int max_text_length = 10000;
     private double[] priorMap = null;
     private boolean verbose = false;
+    private boolean deterministic = false;
+    private double stream_confidence = 0;
+    private int short_text_ngrams = 0;
+    private boolean script_filter = false;
+    private double prune_threshold = 0;
     private Long seed = null;
+    DetectionCache cache = null;
+    private DetectionListener listener = null;
+    private String cacheKeyPrefix = null;
+
+    /** running scores of {@link #append(Reader)}, with and without n-grams containing Latin letters */
+    private double[] streamScore = null;
+    private double[] streamScoreNonLatin = null;
+    private int streamScored = 0;
+    /** number of ids in {@link #ngrams} of the n-grams scored by {@link #append(Reader)}, reused by the detection */
+    private int streamNGramCount = 0;
+
+    // statistics of the current detection (timings and lengths are only measured with a listener)
+    private long cleaningNanos = 0;
+    private long extractionNanos = 0;
+    private long scoringNanos = 0;
+    private int extractedLength = 0;
+    private int ngramHits = 0;
+    private int trials = 0;
+    private int iterations = 0;
+    /** characters read from a stream, not appended yet */
+    private final StringBuilder pending = new StringBuilder();
+    private CharsetDecoder utf8Decoder = null;
+    private char[] decodeBuffer = null;
 
     /**
      * Constructor.
@@ -64,10 +117,77 @@ public class Detector {
      * @param factory {@link DetectorFactory} instance (only DetectorFactory inside)
      */
     public Detector(DetectorFactory factory) {
-        this.wordLangProbMap = factory.wordLangProbMap;
-        this.langlist = factory.langlist;
+        this(factory.getModel());
+    }
+
+    /**
+     * Constructor.
+     * @param model immutable model snapshot (see {@link DetectorFactory#getModel()})
+     */
+    public Detector(DetectorModel model) {
+        this.model = model;
+        this.wordIds = model.ids;
+        this.wordLangProb = model.matrix;
+        this.langlist = model.langlist;
         this.text = new StringBuilder();
-        this.seed  = factory.seed;
+        this.seed  = model.seed;
+        this.langprob = new double[langlist.size()];
+        this.trialProb = new double[langlist.size()];
+        this.candidates = new int[langlist.size()];
+        this.active = new int[langlist.size()];
+    }
+
+    /**
+     * Copy constructor: a new detector with an empty text, sharing the model and the parameters of another one.
+     * @param prototype detector to copy
+     */
+    Detector(Detector prototype) {
+        this.model = prototype.model;
+        this.wordIds = prototype.wordIds;
+        this.wordLangProb = prototype.wordLangProb;
+        this.langlist = prototype.langlist;
+        this.text = new StringBuilder();
+        this.seed = prototype.seed;
+        this.langprob = new double[langlist.size()];
+        this.trialProb = new double[langlist.size()];
+        this.candidates = new int[langlist.size()];
+        this.active = new int[langlist.size()];
+        this.alpha = prototype.alpha;
+        this.n_trial = prototype.n_trial;
+        this.min_trial = prototype.min_trial;
+        this.trial_tolerance = prototype.trial_tolerance;
+        this.max_text_length = prototype.max_text_length;
+        this.priorMap = prototype.priorMap;
+        this.verbose = prototype.verbose;
+        this.deterministic = prototype.deterministic;
+        this.stream_confidence = prototype.stream_confidence;
+        this.short_text_ngrams = prototype.short_text_ngrams;
+        this.script_filter = prototype.script_filter;
+        this.prune_threshold = prototype.prune_threshold;
+        this.cache = prototype.cache;
+        this.listener = prototype.listener;
+    }
+
+    /**
+     * @return the model used by this detector
+     */
+    public DetectorModel getModel() {
+        return model;
+    }
+
+    /**
+     * Clear the target text and the detection results so that the detector can be reused
+     * for another text, keeping its parameters.
+     * <p>
+     * The text buffer, the n-gram buffer and the probability arrays are kept across detections,
+     * so that detecting with a reused detector only allocates the returned results.
+     */
+    public void reset() {
+        text.setLength(0);
+        cleaner.reset();
+        streamScored = 0;
+        cleaningNanos = 0;
+        detected = false;
     }
 
     /**
@@ -84,6 +204,7 @@ public class Detector {
      */
     public void setAlpha(double alpha) {
         this.alpha = alpha;
+        this.cacheKeyPrefix = null;
     }
 
     /**
@@ -109,6 +230,142 @@ public class Detector {
             throw new IllegalArgumentException("More one of prior probability must be non-zero.");
         }
         for (int i=0;i<this.priorMap.length;++i) this.priorMap[i] /= sump;
+        this.cacheKeyPrefix = null;
+    }
+
+    /**
+     * Set the number of random sampling trials averaged for each detection.
+     * The default value is 7.
+     * This disables adaptive trials (see {@link #setAdaptiveTrials(int, int, double)}).
+     * @param n_trial number of trials
+     * @throws IllegalArgumentException if the number of trials is not positive
+     */
+    public void setTrials(int n_trial) {
+        if (n_trial < 1) {
+            throw new IllegalArgumentException("Number of trials must be positive.");
+        }
+        this.n_trial = n_trial;
+        this.min_trial = 0;
+        this.cacheKeyPrefix = null;
+    }
+
+    /**
+     * Stop adding random sampling trials as soon as they agree.
+     * After at least {@code minTrials} trials, detection stops when all trials so far gave the same
+     * most probable language and its probabilities differ by at most {@code tolerance}.
+     * At most {@code maxTrials} trials are run.
+     * For unambiguous texts this usually saves most trials, e.g. with {@code (2, 7, 0.001)}.
+     * @param minTrials minimum number of trials
+     * @param maxTrials maximum number of trials
+     * @param tolerance maximum difference between the probabilities of the most probable language
+     * @throws IllegalArgumentException if the trial counts or the tolerance are invalid
+     */
+    public void setAdaptiveTrials(int minTrials, int maxTrials, double tolerance) {
+        if (minTrials < 1 || maxTrials < minTrials) {
+            throw new IllegalArgumentException("Invalid number of trials.");
+        }
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Tolerance must be non-negative.");
+        }
+        this.n_trial = maxTrials;
+        this.min_trial = minTrials;
+        this.trial_tolerance = tolerance;
+        this.cacheKeyPrefix = null;
+    }
+
+    /**
+     * Use deterministic log-space scoring instead of random sampling trials.
+     * In this mode the smoothed log probabilities of all extracted n-grams are summed exactly once,
+     * so results don't depend on the random seed.
+     * The smoothed log probabilities are computed once for all the n-grams of the model and kept with it,
+     * which takes as much memory again as the model for each smoothing parameter in use
+     * (see {@link LangProbMatrix#smoothedLog(double)}).
+     * The default is random sampling.
+     * @param deterministic true to use deterministic scoring
+     */
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+        this.cacheKeyPrefix = null;
+    }
+
+    /**
+     * Score short texts exactly instead of with random sampling trials.
+     * When at most {@code maxNGrams} n-grams are extracted from the text, the smoothed log probabilities
+     * of its distinct n-grams are summed once each, as in deterministic mode (see {@link #setDeterministic(boolean)}),
+     * which is much faster than running the trials for queries, titles or short messages.
+     * Like deterministic mode, this keeps a log probability matrix as large as the model
+     * for each smoothing parameter in use.
+     * The default value is 0 (always use random sampling).
+     * @param maxNGrams maximum number of extracted n-grams of a short text (0 to disable)
+     * @throws IllegalArgumentException if the number of n-grams is negative
+     */
+    public void setShortTextThreshold(int maxNGrams) {
+        if (maxNGrams < 0) {
+            throw new IllegalArgumentException("Number of n-grams must be non-negative.");
+        }
+        this.short_text_ngrams = maxNGrams;
+        this.cacheKeyPrefix = null;
+    }
+
+    /**
+     * Only score the languages using the main scripts of the target text.
+     * Before scoring, the letters of the text are counted by script, and each script making up at least 10%
+     * of them restricts the candidates to the languages whose profiles use it
+     * (e.g. Hangul to Korean, or Devanagari to Hindi, Marathi and Nepali).
+     * The scripts used by each language are derived from the character probabilities of the loaded profiles.
+     * The other languages get a zero probability; if no language uses all the main scripts, all are scored.
+     * The default is to score all languages.
+     * @param scriptFilter true to restrict the candidate languages by script
+     */
+    public void setScriptFilter(boolean scriptFilter) {
+        this.script_filter = scriptFilter;
+        this.cacheKeyPrefix = null;
+    }
+
+    /**
+     * Drop hopeless languages during random sampling trials.
+     * Every time the probabilities are normalized in a trial, the languages whose probability is below
+     * {@code epsilon} are removed from the languages updated by the rest of the trial,
+     * and their probability is set to zero.
+     * Once most languages are dropped, updates and normalizations only loop over the remaining ones.
+     * The default value is 0 (no pruning).
+     * @param epsilon probability below which a language is dropped (0 to disable), e.g. 1e-10
+     * @throws IllegalArgumentException if epsilon is not in [0, 1)
+     */
+    public void setPruningThreshold(double epsilon) {
+        if (epsilon < 0 || epsilon >= 1) {
+            throw new IllegalArgumentException("Pruning threshold must be between 0 and 1.");
+        }
+        this.prune_threshold = epsilon;
+        this.cacheKeyPrefix = null;
+    }
+
+    /**
+     * Report the timings and statistics of the detections of this detector to a listener.
+     * The default is no listener, in which case nothing is measured.
+     * @param listener listener (null to disable)
+     * @see DetectionListener#detected(DetectionMetrics)
+     */
+    public void setDetectionListener(DetectionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stop reading in {@link #append(Reader)} as soon as the most probable language reaches a confidence.
+     * The text read so far is scored as it arrives with exact log-space scoring,
+     * so that long inputs are only read as far as needed.
+     * Detection itself still runs on the text read, as configured.
+     * Like deterministic mode, this keeps a log probability matrix as large as the model
+     * for each smoothing parameter in use.
+     * The default value is 0 (read up to the max text length).
+     * @param confidence probability of the most probable language (0 to disable)
+     * @throws IllegalArgumentException if the confidence is not in [0, 1]
+     */
+    public void setStreamConfidence(double confidence) {
+        if (confidence < 0 || confidence > 1) {
+            throw new IllegalArgumentException("Confidence must be between 0 and 1.");
+        }
+        this.stream_confidence = confidence;
     }
 
     /**
@@ -123,19 +380,200 @@ public class Detector {
 
     /**
      * Append the target text for language detection.
-     * This method read the text from specified input reader.
-     * If the total size of target text exceeds the limit size specified by {@link Detector#setMaxTextLength(int)},
-     * the rest is cut down.
+     * This method read the text from specified input reader, until its end
+     * or until the total size of target text exceeds the limit size specified by {@link Detector#setMaxTextLength(int)}.
+     * Reading blocks until input is available.
+     * <p>
+     * The text is processed by whitespace delimited chunks, as it arrives.
+     * If a stream confidence is set (see {@link #setStreamConfidence(double)}),
+     * the text is read by small chunks and reading stops once the text read is detected with that confidence.
      *
      * @param reader the input reader (BufferedReader as usual)
      * @throws IOException Can't read the reader.
      */
     public void append(Reader reader) throws IOException {
-        char[] buf = new char[max_text_length/2];
-        while (text.length() < max_text_length && reader.ready()) {
-            int length = reader.read(buf);
-            append(new String(buf, 0, length));
+        // small chunks when the confidence is checked after each of them
+        char[] buf = new char[stream_confidence > 0 ? DECODE_CHUNK : Math.max(max_text_length / 2, 256)];
+        startChunks();
+        while (text.length() < max_text_length) {
+            int length = reader.read(buf, 0, chunkLength(buf.length));
+            if (length < 0) break;
+            if (appendChunks(buf, length)) return;
         }
+        endChunks();
+    }
+
+    /**
+     * Append the target text for language detection, encoded in UTF-8.
+     * The bytes are decoded by small chunks straight into the detector, without any intermediate string,
+     * and decoding stops as soon as the total size of target text exceeds the limit size
+     * specified by {@link Detector#setMaxTextLength(int)} (or, see {@link #setStreamConfidence(double)},
+     * as soon as the text is detected with enough confidence).
+     * Malformed input is replaced with U+FFFD.
+     *
+     * @param utf8 array containing the UTF-8 encoded text
+     * @param offset index of the first byte of the text
+     * @param length number of bytes of the text
+     * @throws IndexOutOfBoundsException if offset and length don't fit in the array
+     */
+    public void append(byte[] utf8, int offset, int length) {
+        append(ByteBuffer.wrap(utf8, offset, length));
+    }
+
+    /**
+     * Append the target text for language detection, encoded in UTF-8.
+     * The remaining bytes of the buffer (heap or direct) are read in place;
+     * the position of the buffer is not changed.
+     *
+     * @param utf8 buffer containing the UTF-8 encoded text
+     * @see #append(byte[], int, int)
+     */
+    public void append(ByteBuffer utf8) {
+        ByteBuffer in = utf8.duplicate();
+        if (utf8Decoder == null) {
+            utf8Decoder = Charset.forName("UTF-8").newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            decodeBuffer = new char[DECODE_CHUNK];
+        }
+        utf8Decoder.reset();
+        CharBuffer out = CharBuffer.wrap(decodeBuffer);
+        startChunks();
+        while (text.length() < max_text_length) {
+            out.clear();
+            out.limit(chunkLength(DECODE_CHUNK));
+            CoderResult result = utf8Decoder.decode(in, out, true);
+            if (result.isUnderflow()) utf8Decoder.flush(out);
+            if (out.position() > 0 && appendChunks(decodeBuffer, out.position())) return;
+            if (result.isUnderflow()) break;
+        }
+        endChunks();
+    }
+
+    private void startChunks() {
+        pending.setLength(0);
+        streamScored = streamNGramCount = 0;
+        if (stream_confidence > 0) initStreamScores();
+    }
+
+    /**
+     * Number of characters to read next from a stream, so that no more characters
+     * are read than the target text can still take
+     * @param capacity size of the read buffer
+     * @return number of characters to read, at least 2 so that a surrogate pair can always be decoded
+     */
+    private int chunkLength(int capacity) {
+        int remaining = max_text_length - text.length() - pending.length();
+        return Math.max(2, Math.min(capacity, remaining));
+    }
+
+    /**
+     * Append characters read from a stream, cut after their last whitespace
+     * so that URLs, mail addresses and combining characters are never split between chunks.
+     * @return true if the text is detected with enough confidence to stop reading
+     */
+    private boolean appendChunks(char[] buf, int length) {
+        int split = length;
+        while (split > 0 && !Character.isWhitespace(buf[split - 1])) --split;
+        if (split == 0 && pending.length() + length < max_text_length) {
+            pending.append(buf, 0, length);
+            return false;
+        }
+        if (split == 0) split = length;
+        pending.append(buf, 0, split);
+        appendChunk(pending);
+        pending.setLength(0);
+        pending.append(buf, split, length - split);
+
+        if (stream_confidence > 0) {
+            streamScored = updateStreamScores(streamScored);
+            return streamConfidence() >= stream_confidence;
+        }
+        return false;
+    }
+
+    private void endChunks() {
+        if (pending.length() > 0 && text.length() < max_text_length) appendChunk(pending);
+        pending.setLength(0);
+    }
+
+    /**
+     * Append a whitespace delimited chunk, collapsing spaces with the text appended before
+     */
+    private void appendChunk(CharSequence chunk) {
+        char pre = text.length() > 0 ? text.charAt(text.length() - 1) : 0;
+        clean(chunk, pre);
+    }
+
+    /**
+     * Clean a text and append it to the target text
+     * @param chunk text to append
+     * @param pre character before the text (0 if none)
+     */
+    private void clean(CharSequence chunk, char pre) {
+        if (listener == null) {
+            cleaner.append(chunk, text, max_text_length, pre);
+            return;
+        }
+        long start = System.nanoTime();
+        cleaner.append(chunk, text, max_text_length, pre);
+        cleaningNanos += System.nanoTime() - start;
+    }
+
+    private void initStreamScores() {
+        if (streamScore == null) {
+            streamScore = new double[langlist.size()];
+            streamScoreNonLatin = new double[langlist.size()];
+        }
+        for (int i = 0; i < streamScore.length; ++i) {
+            streamScore[i] = priorMap != null ? Math.log(priorMap[i]) : 0;
+        }
+        System.arraycopy(streamScore, 0, streamScoreNonLatin, 0, streamScore.length);
+        ngram.reset();
+    }
+
+    /**
+     * Add the log probabilities of the n-grams of the text appended since the last update to the running scores.
+     * Their ids are kept in {@link #ngrams}, so that the detection only extracts the n-grams of the text appended afterwards.
+     * @param from index of the first text character not scored yet
+     * @return index of the first text character not scored yet
+     */
+    private int updateStreamScores(int from) {
+        LangProbMatrix logProb = wordLangProb.smoothedLog(alpha / BASE_FREQ);
+        int latinMask = 0;
+        for (int i = Math.max(0, from - NGram.N_GRAM); i < from; ++i) {
+            latinMask = (latinMask << 1) | (isLatin(text.charAt(i)) ? 1 : 0);
+        }
+        for (int i = from; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            ngram.addChar(c);
+            latinMask = ((latinMask << 1) | (isLatin(c) ? 1 : 0)) & ((1 << NGram.N_GRAM) - 1);
+            for (int n = 1; n <= NGram.N_GRAM; ++n) {
+                int id = wordIds.get(ngram.getKey(n));
+                if (id < 0) continue;
+                streamNGramCount = addNGram(streamNGramCount, id);
+                logProb.addTo(id, streamScore);
+                if ((latinMask & ((1 << n) - 1)) == 0) logProb.addTo(id, streamScoreNonLatin);
+            }
+        }
+        return text.length();
+    }
+
+    /**
+     * @return probability of the most probable language according to the running scores
+     */
+    private double streamConfidence() {
+        // same choice as cleaningText()
+        double[] score = cleaner.getLatinCount() * 2 < cleaner.getNonLatinCount() ? streamScoreNonLatin : streamScore;
+        System.arraycopy(score, 0, trialProb, 0, score.length);
+        normalizeLogProb(trialProb);
+        double max = 0;
+        for (double p : trialProb) if (p > max) max = p;
+        return max;
+    }
+
+    private static boolean isLatin(char c) {
+        return c <= 'z' && c >= 'A';
     }
 
     /**
@@ -146,15 +584,47 @@ public class Detector {
      * @param text the target text to append
      */
     public void append(String text) {
-        text = URL_REGEX.matcher(text).replaceAll(" ");
-        text = MAIL_REGEX.matcher(text).replaceAll(" ");
-        text = NGram.normalize_vi(text);
-        char pre = 0;
-        for (int i = 0; i < text.length() && i < max_text_length; ++i) {
-            char c = text.charAt(i);
-            if (c != ' ' || pre != ' ') this.text.append(c);
-            pre = c;
-        }
+        clean(text, (char) 0);
+    }
+
+    /**
+     * Append the target text for language detection.
+     * The characters are read directly from the sequence (such as a {@link StringBuilder}), without copying it.
+     * If the total size of target text exceeds the limit size specified by {@link Detector#setMaxTextLength(int)},
+     * the rest is cut down.
+     *
+     * @param text the target text to append
+     */
+    public void append(CharSequence text) {
+        clean(text, (char) 0);
+    }
+
+    /**
+     * Append the target text for language detection.
+     * The characters are read directly from the array, without copying it.
+     * If the total size of target text exceeds the limit size specified by {@link Detector#setMaxTextLength(int)},
+     * the rest is cut down.
+     *
+     * @param text array containing the target text
+     * @param offset index of the first character of the text
+     * @param length number of characters of the text
+     * @throws IndexOutOfBoundsException if offset and length don't fit in the array
+     */
+    public void append(char[] text, int offset, int length) {
+        append(CharBuffer.wrap(text, offset, length));
+    }
+
+    /**
+     * Append the target text for language detection.
+     * The remaining characters of the buffer (heap or direct) are read in place;
+     * the position of the buffer is not changed.
+     * If the total size of target text exceeds the limit size specified by {@link Detector#setMaxTextLength(int)},
+     * the rest is cut down.
+     *
+     * @param text buffer containing the target text
+     */
+    public void append(CharBuffer text) {
+        clean(text, (char) 0);
     }
 
     /**
@@ -162,22 +632,16 @@ public class Detector {
      * (eliminate URL, e-mail address and Latin sentence if it is not written in Latin alphabet)
      */
     private void cleaningText() {
-        int latinCount = 0, nonLatinCount = 0;
-        for(int i = 0; i < text.length(); ++i) {
-            char c = text.charAt(i);
-            if (c <= 'z' && c >= 'A') {
-                ++latinCount;
-            } else if (c >= '\u0300' && UnicodeBlock.of(c) != UnicodeBlock.LATIN_EXTENDED_ADDITIONAL) {
-                ++nonLatinCount;
-            }
-        }
-        if (latinCount * 2 < nonLatinCount) {
-            StringBuilder textWithoutLatin = new StringBuilder();
+        // characters are counted as they are appended
+        if (cleaner.getLatinCount() * 2 < cleaner.getNonLatinCount()) {
+            int length = 0;
             for(int i = 0; i < text.length(); ++i) {
                 char c = text.charAt(i);
-                if (c > 'z' || c < 'A') textWithoutLatin.append(c);
+                if (c > 'z' || c < 'A') text.setCharAt(length++, c);
             }
-            text = textWithoutLatin;
+            text.setLength(length);
+            cleaner.clearLatinCount();
+            streamScored = 0;  // the n-grams scored while streaming are no longer those of the text
         }
 
     }
@@ -199,97 +663,411 @@ public class Detector {
      * @throws NoFeatureInTextException Can't detect because of no valid features in text
      */
     public List<LanguageProbability> getProbabilities() {
-        if (langprob == null) detectBlock();
+        if (!detected) {
+            if (listener != null) return detectMeasured();
+            cleaningText();
+            if (cache != null) {
+                detectCached();
+            } else {
+                detectBlock();
+            }
+            detected = true;
+        }
 
         List<LanguageProbability> list = sortProbability(langprob);
         return list;
     }
 
+    /**
+     * Detect as {@link #getProbabilities()}, measuring each stage and reporting to the listener
+     * @throws NoFeatureInTextException Can't detect because of no valid features in text
+     */
+    private List<LanguageProbability> detectMeasured() {
+        int textLength = text.length();
+        long start = System.nanoTime();
+        cleaningText();
+        cleaningNanos += System.nanoTime() - start;
+
+        extractionNanos = scoringNanos = 0;
+        extractedLength = ngramHits = trials = iterations = 0;
+        boolean cached = false;
+        if (cache != null) {
+            cached = detectCached();
+        } else {
+            detectBlock();
+        }
+        detected = true;
+
+        start = System.nanoTime();
+        List<LanguageProbability> list = sortProbability(langprob);
+        long sortingNanos = System.nanoTime() - start;
+        listener.detected(new DetectionMetrics(textLength, extractedLength, ngramHits, trials, iterations, cached,
+                cleaningNanos, extractionNanos, scoringNanos, sortingNanos));
+        return list;
+    }
+
     /**
      * @throws NoFeatureInTextException Can't detect because of no valid features in text
      *
      */
     private void detectBlock() {
-        cleaningText();
-        ArrayList<String> ngrams = extractNGrams();
-        if (ngrams.size()==0) {
+        long start = listener != null ? System.nanoTime() : 0;
+        int ngramCount = extractNGrams();
+        if (ngramCount==0) {
             throw new NoFeatureInTextException("No feature in text");
         }
+        if (listener != null) {
+            long now = System.nanoTime();
+            extractionNanos = now - start;
+            extractedLength = text.length();
+            ngramHits = ngramCount;
+            start = now;
+        }
+        trials = iterations = 0;
+        scoreNGrams(ngramCount);
+        if (listener != null) scoringNanos = System.nanoTime() - start;
+    }
 
-        langprob = new double[langlist.size()];
+    /**
+     * Score languages from the extracted n-grams into {@link #langprob}
+     * @param ngramCount number of n-grams in the buffer
+     */
+    private void scoreNGrams(int ngramCount) {
+        candidateCount = script_filter ? selectCandidates() : allCandidates();
+
+        if (deterministic) {
+            scoreLogProb(ngramCount, langprob);
+            if (verbose) System.out.println("==> " + sortProbability(langprob));
+            return;
+        }
+        if (ngramCount <= short_text_ngrams) {
+            scoreLogProb(distinctNGrams(ngramCount), langprob);
+            if (verbose) System.out.println("==> " + sortProbability(langprob));
+            return;
+        }
 
-        Random rand = new Random();
+        Arrays.fill(langprob, 0);
         if (seed != null) rand.setSeed(seed);
+        if (min_trial > 0) {
+            detectAdaptive(ngramCount);
+            return;
+        }
         for (int t = 0; t < n_trial; ++t) {
-            double[] prob = initProbability();
-            double alpha = this.alpha + rand.nextGaussian() * ALPHA_WIDTH;
-
-            for (int i = 0;; ++i) {
-                int r = rand.nextInt(ngrams.size());
-                updateLangProb(prob, ngrams.get(r), alpha);
-                if (i % 5 == 0) {
-                    if (normalizeProb(prob) > CONV_THRESHOLD || i>=ITERATION_LIMIT) break;
-                    if (verbose) System.out.println("> " + sortProbability(prob));
-                }
-            }
+            double[] prob = runTrial(ngramCount);
             for(int j=0;j<langprob.length;++j) langprob[j] += prob[j] / n_trial;
-            if (verbose) System.out.println("==> " + sortProbability(prob));
         }
     }
 
+    /**
+     * Look up the cleaned text in the factory cache (see {@link DetectorFactory#setCacheSize(int)}),
+     * detecting and caching it on a miss.
+     * @return true if the result was found in the cache
+     * @throws NoFeatureInTextException Can't detect because of no valid features in text
+     */
+    private boolean detectCached() {
+        if (!cache.caches(model)) {
+            // stale or subset model: neither looked up nor counted
+            detectBlock();
+            return false;
+        }
+        if (cacheKeyPrefix == null) {
+            StringBuilder prefix = new StringBuilder();
+            prefix.append(Double.doubleToLongBits(alpha)).append(',').append(seed);
+            if (deterministic) {
+                prefix.append(",d");
+            } else {
+                prefix.append(',').append(n_trial).append(',').append(min_trial).append(',').append(trial_tolerance);
+                prefix.append(',').append(short_text_ngrams).append(',').append(prune_threshold);
+            }
+            if (script_filter) {
+                prefix.append(",s");
+            }
+            if (priorMap != null) prefix.append(',').append(Arrays.toString(priorMap));
+            cacheKeyPrefix = prefix.append('\n').toString();
+        }
+        String key = cacheKeyPrefix + text;
+        double[] cached = cache.get(model, key);
+        if (cached != null) {
+            System.arraycopy(cached, 0, langprob, 0, langprob.length);
+            return true;
+        }
+        detectBlock();
+        cache.put(model, key, langprob.clone());
+        return false;
+    }
+
+    /**
+     * Run trials until they agree (see {@link #setAdaptiveTrials(int, int, double)})
+     * and average them into {@link #langprob}.
+     */
+    private void detectAdaptive(int ngramCount) {
+        int winner = -1;
+        boolean agree = true;
+        double minProb = 1, maxProb = 0;
+        int t = 0;
+        while (t < n_trial) {
+            double[] prob = runTrial(ngramCount);
+            ++t;
+            int best = 0;
+            for (int j = 0; j < prob.length; ++j) {
+                langprob[j] += prob[j];
+                if (prob[j] > prob[best]) best = j;
+            }
+            if (winner < 0) winner = best;
+            if (best != winner) agree = false;
+            minProb = Math.min(minProb, prob[winner]);
+            maxProb = Math.max(maxProb, prob[winner]);
+            if (t >= min_trial && agree && maxProb - minProb <= trial_tolerance) break;
+        }
+        for (int j = 0; j < langprob.length; ++j) langprob[j] /= t;
+    }
+
+    /**
+     * Run one random sampling trial
+     * @return language probabilities of the trial (overwritten by the next trial)
+     */
+    private double[] runTrial(int ngramCount) {
+        double[] prob = initProbability(trialProb);
+        double alpha = this.alpha + rand.nextGaussian() * ALPHA_WIDTH;
+
+        int i = 0;
+        for (;; ++i) {
+            int r = rand.nextInt(ngramCount);
+            updateLangProb(prob, ngrams[r], alpha);
+            if (i % 5 == 0) {
+                double maxp = isSparseActiveSet() ? ScoringKernels.normalize(prob, active, activeCount) : normalizeProb(prob);
+                if (maxp > CONV_THRESHOLD || i>=ITERATION_LIMIT) break;
+                if (prune_threshold > 0) pruneActive(prob);
+                if (verbose) System.out.println("> " + sortProbability(prob));
+            }
+        }
+        ++trials;
+        iterations += i + 1;
+        if (verbose) System.out.println("==> " + sortProbability(prob));
+        return prob;
+    }
+
+    /**
+     * Score languages by summing the smoothed log probabilities of all extracted n-grams,
+     * starting from the log of the prior probabilities.
+     * @param ngramCount number of n-grams in the buffer
+     * @param score array receiving the language probabilities
+     */
+    private void scoreLogProb(int ngramCount, double[] score) {
+        if (priorMap != null) {
+            for(int i=0;i<score.length;++i) score[i] = Math.log(priorMap[i]);
+        } else {
+            Arrays.fill(score, 0);
+        }
+        LangProbMatrix logProb = wordLangProb.smoothedLog(alpha / BASE_FREQ);
+        resetActive();
+        if (isSparseActiveSet()) {
+            for (int i = 0; i < ngramCount; ++i) {
+                logProb.addTo(ngrams[i], score, active, activeCount);
+            }
+        } else {
+            for (int i = 0; i < ngramCount; ++i) {
+                logProb.addTo(ngrams[i], score);
+            }
+        }
+        if (activeCount < score.length) clearInactive(score, Double.NEGATIVE_INFINITY);
+        normalizeLogProb(score);
+    }
+
     /**
      * Initialize the map of language probabilities.
      * If there is the specified prior map, use it as initial map.
+     * @param prob array to initialize
      * @return initialized map of language probabilities
      */
-    private double[] initProbability() {
-        double[] prob = new double[langlist.size()];
+    private double[] initProbability(double[] prob) {
+        resetActive();
         if (priorMap != null) {
             for(int i=0;i<prob.length;++i) prob[i] = priorMap[i];
         } else {
-            for(int i=0;i<prob.length;++i) prob[i] = 1.0 / langlist.size();
+            for(int i=0;i<prob.length;++i) prob[i] = 1.0 / activeCount;
         }
+        if (activeCount < prob.length) clearInactive(prob, 0);
         return prob;
     }
 
     /**
-     * Extract n-grams from target text
-     * @return n-grams list
+     * Extract n-grams from target text.
+     * The ids of the n-grams known by the profiles are written into the
+     * {@code ngrams} buffer owned by this detector, which is grown as needed and reused.
+     * The n-grams already extracted by {@link #updateStreamScores(int)} are kept, and extraction
+     * goes on from the end of the text they were scored from.
+     * @return number of n-gram ids written into the buffer
      */
-    private ArrayList<String> extractNGrams() {
-        ArrayList<String> list = new ArrayList<String>();
-        NGram ngram = new NGram();
-        for(int i=0;i<text.length();++i) {
+    private int extractNGrams() {
+        int size = 0;
+        int from = 0;
+        if (streamScored > 0) {
+            size = streamNGramCount;
+            from = streamScored;
+            streamScored = 0;  // scoring may reorder the buffer
+        } else {
+            ngram.reset();
+        }
+        for(int i=from;i<text.length();++i) {
             ngram.addChar(text.charAt(i));
             for(int n=1;n<=NGram.N_GRAM;++n){
-                String w = ngram.get(n);
-                if (w!=null && wordLangProbMap.containsKey(w)) list.add(w);
+                int id = wordIds.get(ngram.getKey(n));
+                if (id >= 0) size = addNGram(size, id);
             }
         }
-        return list;
+        return size;
+    }
+
+    /**
+     * Write an n-gram id into the {@code ngrams} buffer, growing it as needed
+     * @param size number of ids in the buffer
+     * @param id n-gram id
+     * @return number of ids in the buffer
+     */
+    private int addNGram(int size, int id) {
+        if (size == ngrams.length) {
+            int[] newNgrams = new int[ngrams.length * 2];
+            System.arraycopy(ngrams, 0, newNgrams, 0, size);
+            ngrams = newNgrams;
+        }
+        ngrams[size++] = id;
+        return size;
+    }
+
+    /**
+     * Restrict the candidate languages to those using the main scripts of the target text
+     * (see {@link #setScriptFilter(boolean)}).
+     * @return number of candidate languages, whose indexes are listed in increasing order in {@link #candidates}
+     */
+    private int selectCandidates() {
+        if (scriptHistogram == null) scriptHistogram = new int[CharScript.count()];
+        Arrays.fill(scriptHistogram, 0);
+        int letters = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            int script = CharScript.of(NGram.normalize(text.charAt(i)));
+            if (script == CharScript.NONE) continue;
+            ++scriptHistogram[script];
+            ++letters;
+        }
+
+        boolean[][] scriptLanguages = model.scriptLanguages();
+        int count = 0;
+        for (int lang = 0; lang < langlist.size(); ++lang) {
+            boolean candidate = priorMap == null || priorMap[lang] > 0;
+            for (int script = 0; candidate && script < scriptHistogram.length; ++script) {
+                if (scriptHistogram[script] > 0 && scriptHistogram[script] >= letters * SCRIPT_SHARE) {
+                    candidate = scriptLanguages[script][lang];
+                }
+            }
+            if (candidate) candidates[count++] = lang;
+        }
+        return count > 0 ? count : allCandidates();
+    }
+
+    /**
+     * Make all languages candidates
+     * @return number of candidate languages
+     */
+    private int allCandidates() {
+        for (int lang = 0; lang < candidates.length; ++lang) candidates[lang] = lang;
+        return candidates.length;
+    }
+
+    /**
+     * Start updating all candidate languages
+     */
+    private void resetActive() {
+        System.arraycopy(candidates, 0, active, 0, candidateCount);
+        activeCount = candidateCount;
+    }
+
+    /**
+     * Stop updating the languages whose probability is below the pruning threshold
+     * (see {@link #setPruningThreshold(double)}), unless all are.
+     * @param prob normalized language probabilities
+     */
+    private void pruneActive(double[] prob) {
+        int count = 0;
+        for (int k = 0; k < activeCount; ++k) {
+            if (prob[active[k]] >= prune_threshold) ++count;
+        }
+        if (count == 0 || count == activeCount) return;
+        count = 0;
+        for (int k = 0; k < activeCount; ++k) {
+            int lang = active[k];
+            if (prob[lang] >= prune_threshold) {
+                active[count++] = lang;
+            } else {
+                prob[lang] = 0;
+            }
+        }
+        activeCount = count;
     }
 
     /**
-     * update language probabilities with N-gram string(N=1,2,3)
-     * @param word N-gram string
+     * @return true if few enough languages are active to only update those,
+     *         instead of updating all languages with the contiguous kernels
      */
-    private boolean updateLangProb(double[] prob, String word, double alpha) {
-        if (word == null || !wordLangProbMap.containsKey(word)) return false;
+    private boolean isSparseActiveSet() {
+        return activeCount * 2 < langlist.size();
+    }
 
-        double[] langProbMap = wordLangProbMap.get(word);
-        if (verbose) System.out.println(word + "(" + unicodeEncode(word) + "):" + wordProbToString(langProbMap));
+    /**
+     * Set the values of the languages which are not candidates
+     * @param values values of all languages
+     * @param value value of non-candidate languages
+     */
+    private void clearInactive(double[] values, double value) {
+        int k = 0;
+        for (int i = 0; i < values.length; ++i) {
+            if (k < activeCount && active[k] == i) {
+                ++k;
+            } else {
+                values[i] = value;
+            }
+        }
+    }
+
+    /**
+     * Remove duplicate ids from the n-gram buffer (their order is not kept)
+     * @param ngramCount number of n-grams in the buffer
+     * @return number of distinct n-grams left in the buffer
+     */
+    private int distinctNGrams(int ngramCount) {
+        Arrays.sort(ngrams, 0, ngramCount);
+        int size = 0;
+        for (int i = 0; i < ngramCount; ++i) {
+            if (size == 0 || ngrams[i] != ngrams[size - 1]) ngrams[size++] = ngrams[i];
+        }
+        return size;
+    }
+
+    /**
+     * update language probabilities with N-gram id
+     * @param id N-gram id
+     */
+    private boolean updateLangProb(double[] prob, int id, double alpha) {
+        if (id < 0) return false;
+
+        if (verbose) {
+            String word = NGram.decode(wordIds.keyOf(id));
+            System.out.println(word + "(" + unicodeEncode(word) + "):" + wordProbToString(id));
+        }
 
         double weight = alpha / BASE_FREQ;
-        for (int i=0;i<prob.length;++i) {
-            prob[i] *= weight + langProbMap[i];
+        if (isSparseActiveSet()) {
+            wordLangProb.multiply(id, weight, prob, active, activeCount);
+        } else {
+            wordLangProb.multiply(id, weight, prob);
         }
         return true;
     }
 
-    private String wordProbToString(double[] prob) {
+    private String wordProbToString(int id) {
         Formatter formatter = new Formatter();
-        for(int j=0;j<prob.length;++j) {
-            double p = prob[j];
+        for(int j=0;j<langlist.size();++j) {
+            double p = wordLangProb.get(id, j);
             if (p>=0.00001) {
                 formatter.format(" %s:%.5f", langlist.get(j), p);
             }
@@ -304,14 +1082,23 @@ public class Detector {
      * @return maximum of probabilities
      */
     private static double normalizeProb(double[] prob) {
-        double maxp = 0, sump = 0;
-        for(int i=0;i<prob.length;++i) sump += prob[i];
-        for(int i=0;i<prob.length;++i) {
-            double p = prob[i] / sump;
-            if (maxp < p) maxp = p;
-            prob[i] = p;
-        }
-        return maxp;
+        return ScoringKernels.normalize(prob, prob.length);
+    }
+
+    /**
+     * turn log scores into probabilities (in place)
+     * @param score log scores
+     */
+    private static void normalizeLogProb(double[] score) {
+        double maxs = Double.NEGATIVE_INFINITY;
+        for(int i=0;i<score.length;++i) if (score[i] > maxs) maxs = score[i];
+        double sump = 0;
+        for(int i=0;i<score.length;++i) {
+            double p = Math.exp(score[i] - maxs);
+            score[i] = p;
+            sump += p;
+        }
+        for(int i=0;i<score.length;++i) score[i] /= sump;
     }
 
     /**
@@ -6,16 +6,35 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import net.arnx.jsonic.JSON;
 import net.arnx.jsonic.JSONException;
 
+import com.cybozu.labs.langdetect.util.BinaryModel;
+import com.cybozu.labs.langdetect.util.DenseLangProbMatrix;
+import com.cybozu.labs.langdetect.util.LangProbMatrix;
 import com.cybozu.labs.langdetect.util.LangProfile;
+import com.cybozu.labs.langdetect.util.NGram;
+import com.cybozu.labs.langdetect.util.NGramTable;
+import com.cybozu.labs.langdetect.util.SparseLangProbMatrix;
 
 /**
  * Language Detector Factory Class
@@ -47,38 +66,84 @@ public class DetectorFactory {
     }
 
     protected int capacity;
-    protected HashMap<String, double[]> wordLangProbMap;
+    protected NGramTable wordIds;
+    protected double[][] wordLangProb;
     protected ArrayList<String> langlist;
     protected Long seed = null;
 
+    protected DetectorModel model = null;
+    private boolean floatPrecision = false;
+    /** true once the loaded probabilities have been rounded to float, which can't be undone */
+    private boolean floatRounded = false;
+    private boolean frequencyOrder = false;
+    private boolean sparseModel = false;
+    private DetectionCache cache = null;
+    private volatile DetectionListener listener = null;
+    private ThreadPoolExecutor batchExecutor = null;
+
     private DetectorFactory() {
-        wordLangProbMap = new HashMap<String, double[]>();
+        wordIds = new NGramTable();
+        wordLangProb = new double[1024][];
         langlist = new ArrayList<String>();
         capacity = 0;
     }
 
-    private void ensureCapacity(int newCapacity) {
+    private synchronized void ensureCapacity(int newCapacity) {
+        reopenModel();
         if (newCapacity > capacity) {
-            for (Map.Entry<String, double[]> entry : wordLangProbMap.entrySet()) {
+            for (int id = 0; id < wordIds.size(); ++id) {
                    double[] newProb = new double[newCapacity];
-                   System.arraycopy(entry.getValue(), 0, newProb, 0, capacity);
-                   entry.setValue(newProb);
+                   System.arraycopy(wordLangProb[id], 0, newProb, 0, capacity);
+                   wordLangProb[id] = newProb;
             }
             capacity = newCapacity;
         }
     }
 
-    private void ensureRemainingCapacity(int freeCapacity) {
-        ensureCapacity(langlist.size() + freeCapacity);
+    /**
+     * Load the internal profiles bundled in the JAR file.
+     * <p>
+     * If no profile is loaded yet, the model precompiled at build time is read in one go.
+     * Otherwise the JSON profiles are added to the loaded ones.
+     *
+     * @throws IOException
+     */
+    public void loadDefaultProfiles() throws IOException {
+        loadBundledProfiles("profiles");
     }
 
     /**
-     * Load the internal profiles bundled in the JAR file
+     * Load the internal profiles for short messages (such as tweets) bundled in the JAR file.
      *
      * @throws IOException
+     * @see #loadDefaultProfiles()
      */
-    public void loadDefaultProfiles() throws IOException {
-        InputStream profileListStream = this.getClass().getResourceAsStream("profiles/profiles.lst");
+    public void loadShortMessageProfiles() throws IOException {
+        loadBundledProfiles("profiles-sm");
+    }
+
+    private void loadBundledProfiles(String name) throws IOException {
+        DetectionListener loadListener = listener;
+        long start = System.nanoTime();
+        synchronized (this) {
+            if (langlist.size() == 0) {
+                InputStream modelStream = this.getClass().getResourceAsStream(name + ".bin");
+                if (modelStream != null) {
+                    try {
+                        BinaryModel binaryModel = BinaryModel.read(modelStream);
+                        setModel(binaryModel);
+                        loaded(loadListener, start, binaryModel.getLangList().size());
+                        return;
+                    } finally {
+                        try {
+                            modelStream.close();
+                        } catch (IOException e) {}
+                    }
+                }
+            }
+        }
+
+        InputStream profileListStream = this.getClass().getResourceAsStream(name + "/profiles.lst");
         if (profileListStream == null) {
             throw new IOException("Couldn't find default profiles package");
         }
@@ -88,21 +153,27 @@ public class DetectorFactory {
         String profileList = profileListBuffer.readLine();
         String[] profiles = profileList.split(",");
 
-        ensureRemainingCapacity(profiles.length);
-        for (String profileName: profiles) {
-            InputStream is = null;
-            try {
-                is = this.getClass().getResourceAsStream("profiles/" + profileName);
-                LangProfile profile = JSON.decode(is, LangProfile.class);
-                addProfile(profile);
-            } catch (JSONException e) {
-                throw new IOException("Profile format error in '" + profileName + "'", e);
-            } finally {
-                try {
-                    if (is!=null) is.close();
-                } catch (IOException e) {}
-            }
+        List<Callable<LangProfile>> decoders = new ArrayList<Callable<LangProfile>>(profiles.length);
+        for (final String profileName: profiles) {
+            final String resource = name + "/" + profileName;
+            decoders.add(new Callable<LangProfile>() {
+                public LangProfile call() throws IOException {
+                    InputStream is = null;
+                    try {
+                        is = DetectorFactory.class.getResourceAsStream(resource);
+                        return JSON.decode(is, LangProfile.class);
+                    } catch (JSONException e) {
+                        throw new IOException("Profile format error in '" + profileName + "'", e);
+                    } finally {
+                        try {
+                            if (is!=null) is.close();
+                        } catch (IOException e) {}
+                    }
+                }
+            });
         }
+        addProfiles(decodeProfiles(decoders));
+        loaded(loadListener, start, decoders.size());
     }
 
     /**
@@ -119,36 +190,55 @@ public class DetectorFactory {
     /**
      * Load profiles from specified directory.
      * This method must be called once before language detection.
+     * <p>
+     * The profiles are decoded concurrently, then added all at once.
      *
      * @param profileDirectory profile directory path
      * @throws IOException Can't open profiles or profile's format is wrong
      */
     public void loadProfiles(File profileDirectory) throws IOException {
+        DetectionListener loadListener = listener;
+        long start = System.nanoTime();
         File[] listFiles = profileDirectory.listFiles();
         if (listFiles == null) {
             throw new IOException("Couldn't open directory or directory is empty: " + profileDirectory);
         }
 
-        ensureRemainingCapacity(listFiles.length);
-        for (File file: listFiles) {
+        List<Callable<LangProfile>> decoders = new ArrayList<Callable<LangProfile>>(listFiles.length);
+        for (final File file: listFiles) {
             if (file.getName().startsWith(".") || !file.isFile()) continue;
-            loadProfile(file);
+            decoders.add(new Callable<LangProfile>() {
+                public LangProfile call() throws IOException {
+                    return decodeProfile(file);
+                }
+            });
         }
+        addProfiles(decodeProfiles(decoders));
+        loaded(loadListener, start, decoders.size());
     }
 
     /**
      * Load profiles using the supplied json encoded strings
      * This method must be called once before language detection.
+     * <p>
+     * The profiles are decoded concurrently, then added all at once.
      *
      * @param json_profiles list of json encoded language profiles
      * @throws IllegalArgumentException profile format is wrong
      */
     public void loadProfiles(List<String> json_profiles) throws IOException {
-        ensureRemainingCapacity(json_profiles.size());
-
-        for (String json: json_profiles) {
-            loadProfile(json);
+        DetectionListener loadListener = listener;
+        long start = System.nanoTime();
+        List<Callable<LangProfile>> decoders = new ArrayList<Callable<LangProfile>>(json_profiles.size());
+        for (final String json: json_profiles) {
+            decoders.add(new Callable<LangProfile>() {
+                public LangProfile call() throws IOException {
+                    return decodeProfile(json);
+                }
+            });
         }
+        addProfiles(decodeProfiles(decoders));
+        loaded(loadListener, start, decoders.size());
     }
 
     /**
@@ -158,11 +248,30 @@ public class DetectorFactory {
      * @throws IOException Can't open profiles or profile's format is wrong
      */
     public void loadProfile(File profileFile) throws IOException {
+        DetectionListener loadListener = listener;
+        long start = System.nanoTime();
+        addProfile(decodeProfile(profileFile));
+        loaded(loadListener, start, 1);
+    }
+
+    /**
+     * Load a profile using the supplied json encoded string
+     *
+     * @param jsonProfile json encoded language profile
+     * @throws IOException profile format is wrong
+     */
+    public void loadProfile(String jsonProfile) throws IOException {
+        DetectionListener loadListener = listener;
+        long start = System.nanoTime();
+        addProfile(decodeProfile(jsonProfile));
+        loaded(loadListener, start, 1);
+    }
+
+    private static LangProfile decodeProfile(File profileFile) throws IOException {
         FileInputStream is = null;
         try {
             is = new FileInputStream(profileFile);
-            LangProfile profile = JSON.decode(is, LangProfile.class);
-            addProfile(profile);
+            return JSON.decode(is, LangProfile.class);
         } catch (JSONException e) {
             throw new IOException("Profile format error in '" + profileFile.getName() + "'", e);
         } finally {
@@ -172,55 +281,428 @@ public class DetectorFactory {
         }
     }
 
+    private static LangProfile decodeProfile(String jsonProfile) throws IOException {
+        try {
+            return JSON.decode(jsonProfile, LangProfile.class);
+        } catch (JSONException e) {
+            throw new IOException("Profile format error");
+        }
+    }
+
     /**
-     * Load a profile using the supplied json encoded string
+     * Run profile decoders, concurrently if there are several of them
+     * @param decoders profile decoders
+     * @return decoded profiles, in the order of the decoders
+     * @throws IOException the first error raised by a decoder
+     */
+    private static List<LangProfile> decodeProfiles(List<Callable<LangProfile>> decoders) throws IOException {
+        List<LangProfile> profiles = new ArrayList<LangProfile>(decoders.size());
+        int threads = Math.min(decoders.size(), Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            for (Callable<LangProfile> decoder : decoders) {
+                try {
+                    profiles.add(decoder.call());
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+            return profiles;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "langdetect-loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            for (Future<LangProfile> future : executor.invokeAll(decoders)) {
+                profiles.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Profile loading interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return profiles;
+    }
+
+    /**
+     * Load a compiled model written by {@link DetectorModel#write(java.io.OutputStream)}.
+     * The file is memory-mapped and copied once, in bulk, into the model arrays,
+     * which is much faster than decoding JSON profiles.
+     * The mapping only speeds up that read: the model lives on the heap and doesn't keep the mapping.
+     * If the precision or layout set with the model options of this factory differ from those of the model,
+     * or if frequency order is set, the model is recompiled on first use.
+     * A single precision model switches this factory to single precision, since its probabilities
+     * can't be made double again (see {@link #setFloatPrecision(boolean)}).
+     * More profiles can still be added afterwards.
      *
-     * @param jsonProfile json encoded language profile
-     * @throws IOException profile format is wrong
+     * @param modelFile compiled model file
+     * @throws IOException Can't open the file or its format is wrong
+     * @throws IllegalStateException if profiles are already loaded
      */
-    public void loadProfile(String jsonProfile) throws IOException {
+    public void loadModel(File modelFile) throws IOException {
+        DetectionListener loadListener = listener;
+        long start = System.nanoTime();
+        FileInputStream is = null;
         try {
-            LangProfile profile = JSON.decode(jsonProfile, LangProfile.class);
-            addProfile(profile);
-        } catch (JSONException e) {
-            throw new IOException("Profile format error");
+            is = new FileInputStream(modelFile);
+            FileChannel channel = is.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            BinaryModel binaryModel = BinaryModel.read(buffer);
+            setModel(binaryModel);
+            loaded(loadListener, start, binaryModel.getLangList().size());
+        } catch (IOException e) {
+            throw new IOException("Can't load model '" + modelFile.getName() + "': " + e.getMessage(), e);
+        } finally {
+            try {
+                if (is!=null) is.close();
+            } catch (IOException e) {}
+        }
+    }
+
+    /**
+     * Load a compiled model written by {@link DetectorModel#write(java.io.OutputStream)} from a stream.
+     * The stream is read through a small buffer straight into the model arrays. It is not closed.
+     *
+     * @param is stream containing the compiled model
+     * @throws IOException Can't read the stream or its format is wrong
+     * @throws IllegalStateException if profiles are already loaded
+     * @see #loadModel(File)
+     */
+    public void loadModel(InputStream is) throws IOException {
+        DetectionListener loadListener = listener;
+        long start = System.nanoTime();
+        BinaryModel binaryModel = BinaryModel.read(is);
+        setModel(binaryModel);
+        loaded(loadListener, start, binaryModel.getLangList().size());
+    }
+
+    /**
+     * Report a profile loading to a listener
+     * @param listener listener set when the loading started (null if none)
+     * @param start start time of the loading
+     * @param profiles number of loaded profiles
+     */
+    private static void loaded(DetectionListener listener, long start, int profiles) {
+        if (listener != null) listener.profilesLoaded(profiles, System.nanoTime() - start);
+    }
+
+    private synchronized void setModel(BinaryModel binaryModel) {
+        if (langlist.size() > 0) {
+            throw new IllegalStateException("Profiles are already loaded");
+        }
+        langlist.addAll(binaryModel.getLangList());
+        LangProbMatrix loaded = binaryModel.getMatrix();
+        if (loaded.isFloat()) {
+            // the rounded probabilities would only be widened back: keep them in single precision
+            floatPrecision = true;
+            floatRounded = true;
+        }
+        if (loaded instanceof SparseLangProbMatrix && !sparseModel && loaded.isFloat() == floatPrecision && !frequencyOrder) {
+            // the bundled models are stored sparse: expand them without going through the rows
+            loaded = ((SparseLangProbMatrix) loaded).toDense();
+        }
+        model = new DetectorModel(langlist, binaryModel.getIds(), loaded, seed);
+        wordIds = null;
+        wordLangProb = null;
+        capacity = langlist.size();
+        if (cache != null) cache.setModel(model.matrix);
+
+        // recompile the model if its layout doesn't match the options set before loading
+        // (rows are kept in the order of the loaded model unless frequency order is set)
+        LangProbMatrix matrix = model.matrix;
+        if (matrix.isFloat() != floatPrecision || (matrix instanceof SparseLangProbMatrix) != sparseModel || frequencyOrder) {
+            reopenModel();
         }
     }
 
     /**
      * @param profile internal profile structure
-     * @param index Index of the added profile
-     * @param langsize Total number of profiles
      * @throws IllegalArgumentException If the added profile already exists
      */
     void addProfile(LangProfile profile) {
-        String lang = profile.name;
-        if (langlist.contains(lang)) {
-            throw new IllegalArgumentException("Duplicate language profile for [" + lang + "]");
-        }
-        int index = langlist.size();
-        if (capacity <= index) {
-            ensureCapacity(capacity + 1);
-        }
-        this.langlist.add(lang);
-        for (String word: profile.freq.keySet()) {
-            if (!this.wordLangProbMap.containsKey(word)) {
-                this.wordLangProbMap.put(word, new double[capacity]);
+        addProfiles(Collections.singletonList(profile));
+    }
+
+    /**
+     * Add profiles in two phases: the n-gram vocabulary of all profiles is collected first,
+     * then the probability rows are grown and allocated once for all the new languages.
+     * @param profiles internal profile structures
+     * @throws IllegalArgumentException If one of the added profiles already exists
+     */
+    synchronized void addProfiles(List<LangProfile> profiles) {
+        HashSet<String> names = new HashSet<String>(langlist);
+        for (LangProfile profile : profiles) {
+            if (!names.add(profile.name)) {
+                throw new IllegalArgumentException("Duplicate language profile for [" + profile.name + "]");
             }
-            int length = word.length();
-            if (length >= 1 && length <= 3) {
-                double prob = profile.freq.get(word).doubleValue() / profile.n_words[length - 1];
-                this.wordLangProbMap.get(word)[index] = prob;
+        }
+        reopenModel();
+        int first = langlist.size();
+        int newCapacity = first + profiles.size();
+        if (newCapacity > capacity) {
+            // grow geometrically so that adding profiles one by one stays linear
+            ensureCapacity(profiles.size() == 1 ? Math.max(newCapacity, capacity + capacity / 2) : newCapacity);
+        }
+
+        // phase 1: vocabulary
+        int[][] profileIds = new int[profiles.size()][];
+        for (int i = 0; i < profiles.size(); ++i) {
+            LangProfile profile = profiles.get(i);
+            int[] ids = new int[profile.freq.size()];
+            int k = 0;
+            for (String word: profile.freq.keySet()) {
+                long key = NGram.encode(word);
+                ids[k++] = key == 0 ? -1 : wordIds.put(key);
             }
+            profileIds[i] = ids;
+        }
+
+        // phase 2: rows
+        int size = wordIds.size();
+        if (size > wordLangProb.length) {
+            double[][] newRows = new double[Math.max(size, wordLangProb.length * 2)][];
+            System.arraycopy(wordLangProb, 0, newRows, 0, wordLangProb.length);
+            wordLangProb = newRows;
+        }
+        for (int id = 0; id < size; ++id) {
+            if (wordLangProb[id] == null) wordLangProb[id] = new double[capacity];
+        }
+        for (int i = 0; i < profiles.size(); ++i) {
+            LangProfile profile = profiles.get(i);
+            int index = first + i;
+            int[] ids = profileIds[i];
+            int k = 0;
+            for (Map.Entry<String, Integer> entry: profile.freq.entrySet()) {
+                int id = ids[k++];
+                if (id < 0) continue;
+                String word = entry.getKey();
+                wordLangProb[id][index] = entry.getValue().doubleValue() / profile.n_words[word.length() - 1];
+            }
+            langlist.add(profile.name);
         }
     }
 
     /**
      * Clear loaded language profiles (reinitialization to be available)
      */
-    public void clear() {
+    public synchronized void clear() {
         this.langlist.clear();
-        this.wordLangProbMap.clear();
+        this.wordIds = new NGramTable();
+        this.wordLangProb = new double[1024][];
+        this.model = null;
+        this.floatRounded = false;
+        if (cache != null) cache.setModel(null);
+        if (batchExecutor != null) {
+            batchExecutor.shutdown();
+            batchExecutor = null;
+        }
+    }
+
+    /**
+     * Get an immutable snapshot of the loaded profiles.
+     * <p>
+     * The profiles are compiled into the probability matrix used by the detectors the first time,
+     * then the same snapshot is returned until profiles or model options are changed.
+     * Loading or clearing profiles afterwards doesn't affect snapshots already taken,
+     * nor the detectors constructed from them.
+     *
+     * @return model snapshot
+     * @throws IllegalStateException if no profile is loaded
+     */
+    public synchronized DetectorModel getModel() {
+        if (model == null) {
+            if (langlist.size() == 0) {
+                throw new IllegalStateException("Profiles need to be loaded first");
+            }
+            compileModel();
+        }
+        return model;
+    }
+
+    /**
+     * Get a snapshot of the loaded profiles restricted to some languages.
+     *
+     * @param languages languages to detect
+     * @return model snapshot scoring only the languages
+     * @throws IllegalStateException if no profile is loaded
+     * @throws IllegalArgumentException if a language is unknown
+     * @see DetectorModel#subset(List)
+     */
+    public DetectorModel getModel(List<String> languages) {
+        return getModel().subset(languages);
+    }
+
+    /**
+     * Compile the loaded profiles into a flat probability matrix used by the detectors.
+     * The growable per n-gram rows are released once compiled.
+     */
+    private void compileModel() {
+        NGramTable modelIds;
+        int languages = langlist.size();
+        int size = wordIds.size();
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; ++i) order[i] = i;
+        if (frequencyOrder) {
+            // sort rows by decreasing aggregated frequency so that the most used ones share cache lines
+            long[] freq = new long[size];
+            for (int id = 0; id < size; ++id) {
+                double sum = 0;
+                double[] row = wordLangProb[id];
+                for (int j = 0; j < languages; ++j) sum += row[j];
+                freq[id] = ((long) Float.floatToIntBits((float) sum) << 32) | id;
+            }
+            Arrays.sort(freq);
+            NGramTable ids = new NGramTable(size);
+            for (int i = 0; i < size; ++i) {
+                order[i] = (int) freq[size - 1 - i];
+                ids.put(wordIds.keyOf(order[i]));
+            }
+            modelIds = ids;
+        } else {
+            modelIds = wordIds;
+        }
+
+        LangProbMatrix matrix = sparseModel ? compileSparse(order, languages) : compileDense(order, languages);
+        if (floatPrecision) floatRounded = true;
+        model = new DetectorModel(langlist, modelIds, matrix, seed);
+        wordIds = null;
+        wordLangProb = null;
+        if (cache != null) cache.setModel(matrix);
+    }
+
+    private LangProbMatrix compileDense(int[] order, int languages) {
+        int size = order.length;
+        double[] doubles = floatPrecision ? null : new double[size * languages];
+        float[] floats = floatPrecision ? new float[size * languages] : null;
+        for (int i = 0; i < size; ++i) {
+            double[] row = wordLangProb[order[i]];
+            int offset = i * languages;
+            for (int j = 0; j < languages; ++j) {
+                if (floats != null) {
+                    floats[offset + j] = (float) row[j];
+                } else {
+                    doubles[offset + j] = row[j];
+                }
+            }
+        }
+        return floats != null ? new DenseLangProbMatrix(floats, languages) : new DenseLangProbMatrix(doubles, languages);
+    }
+
+    private LangProbMatrix compileSparse(int[] order, int languages) {
+        if (languages > SparseLangProbMatrix.MAX_LANGUAGES) {
+            throw new IllegalStateException("Too many languages for a sparse model: " + languages);
+        }
+        int size = order.length;
+        int[] rowStart = new int[size + 1];
+        for (int i = 0; i < size; ++i) {
+            double[] row = wordLangProb[order[i]];
+            int pairs = 0;
+            for (int j = 0; j < languages; ++j) if (row[j] != 0) ++pairs;
+            rowStart[i + 1] = rowStart[i] + pairs;
+        }
+        short[] langIndex = new short[rowStart[size]];
+        double[] doubles = floatPrecision ? null : new double[rowStart[size]];
+        float[] floats = floatPrecision ? new float[rowStart[size]] : null;
+        for (int i = 0; i < size; ++i) {
+            double[] row = wordLangProb[order[i]];
+            int k = rowStart[i];
+            for (int j = 0; j < languages; ++j) {
+                if (row[j] == 0) continue;
+                langIndex[k] = (short) j;
+                if (floats != null) {
+                    floats[k] = (float) row[j];
+                } else {
+                    doubles[k] = row[j];
+                }
+                ++k;
+            }
+        }
+        return floats != null
+                ? new SparseLangProbMatrix(rowStart, langIndex, floats, languages)
+                : new SparseLangProbMatrix(rowStart, langIndex, doubles, languages);
+    }
+
+    /**
+     * Turn a compiled model back into growable rows so that more profiles can be added.
+     * The rows of a single precision model hold the rounded probabilities.
+     */
+    private void reopenModel() {
+        if (model == null) return;
+        LangProbMatrix matrix = model.matrix;
+        NGramTable modelIds = model.ids;
+        int languages = matrix.languages();
+        int size = modelIds.size();
+        NGramTable ids = new NGramTable(size);
+        double[][] rows = new double[Math.max(size, 1024)][];
+        for (int id = 0; id < size; ++id) {
+            ids.put(modelIds.keyOf(id));
+            double[] row = new double[languages];
+            matrix.getRow(id, row);
+            rows[id] = row;
+        }
+        wordIds = ids;
+        wordLangProb = rows;
+        capacity = languages;
+        model = null;
+        if (cache != null) cache.setModel(null);
+    }
+
+    /**
+     * Store the compiled language probabilities as {@code float} instead of {@code double}.
+     * This halves the memory footprint of the model at the cost of precision.
+     * The default is double precision.
+     * <p>
+     * Once a single precision model has been compiled or loaded, the double precision probabilities
+     * are gone: switching back to double precision is rejected until {@link #clear()} is called
+     * and the profiles are loaded again.
+     * @param floatPrecision true to use single precision
+     * @throws IllegalStateException if double precision is requested for probabilities already rounded to float
+     */
+    public synchronized void setFloatPrecision(boolean floatPrecision) {
+        if (this.floatPrecision == floatPrecision) return;
+        if (!floatPrecision && floatRounded) {
+            throw new IllegalStateException("Probabilities are already rounded to float precision: clear and reload the profiles first");
+        }
+        reopenModel();
+        this.floatPrecision = floatPrecision;
+    }
+
+    /**
+     * Order the rows of the compiled model by decreasing n-gram frequency
+     * (summed over all languages), so that the most frequent n-grams are stored next to each other.
+     * The default is the profile loading order.
+     * @param frequencyOrder true to order rows by frequency
+     */
+    public synchronized void setFrequencyOrder(boolean frequencyOrder) {
+        if (this.frequencyOrder == frequencyOrder) return;
+        reopenModel();
+        this.frequencyOrder = frequencyOrder;
+    }
+
+    /**
+     * Store only the non-zero language probabilities of each n-gram in the compiled model.
+     * Scoring then only touches the languages an n-gram actually occurs in,
+     * which pays off for profile sets with many languages.
+     * The default is a dense model.
+     * @param sparseModel true to use a sparse model
+     */
+    public synchronized void setSparseModel(boolean sparseModel) {
+        if (this.sparseModel == sparseModel) return;
+        reopenModel();
+        this.sparseModel = sparseModel;
     }
 
     /**
@@ -245,15 +727,127 @@ public class DetectorFactory {
     }
 
     private Detector createDetector() {
-        if (this.langlist.size()==0) {
-            throw new IllegalStateException("Profiles need to be loaded first");
-        }
-        Detector detector = new Detector(this);
+        Detector detector = new Detector(getModel());
+        detector.cache = getCache();
+        detector.setDetectionListener(listener);
         return detector;
     }
 
-    public void setSeed(long seed) {
+    /**
+     * Construct a pool of reusable detectors sharing the current model
+     *
+     * @return DetectorPool instance
+     * @see DetectorPool
+     */
+    public DetectorPool createPool() {
+        return new DetectorPool(createDetector());
+    }
+
+    /**
+     * Construct a pool of reusable detectors sharing the current model, with smoothing parameter
+     *
+     * @param alpha smoothing parameter (default value = 0.5)
+     * @return DetectorPool instance
+     * @see DetectorPool
+     */
+    public DetectorPool createPool(double alpha) {
+        return new DetectorPool(create(alpha));
+    }
+
+    /**
+     * Detect the languages of a batch of texts in parallel, with the default detection parameters.
+     * <p>
+     * The texts are split across daemon threads (one per available processor) of an executor
+     * started by the first batch and shared by the following ones, each thread reusing its own detector.
+     * Its threads stop after {@value #BATCH_KEEP_ALIVE_SECONDS} seconds without batch, and all at once
+     * on {@link #clear()}, so that neither they nor the detectors they hold outlive the factory's use.
+     * To run batches on threads of your own, use {@link DetectorPool#detectAll(List, ExecutorService)} instead.
+     * A failure on one text (e.g. {@link NoFeatureInTextException}) is reported in its result
+     * and doesn't abort the batch.
+     *
+     * @param texts the target texts
+     * @return detection results, in the order of the texts
+     * @throws InterruptedException if interrupted while waiting for the detections
+     * @see DetectorPool#detectAll(List, ExecutorService)
+     */
+    public List<DetectionResult> detectAll(List<? extends CharSequence> texts) throws InterruptedException {
+        if (texts.isEmpty()) return new ArrayList<DetectionResult>();
+        return createPool().detectAll(texts, getBatchExecutor());
+    }
+
+    /** Idle time after which the threads of {@link #detectAll(List)} stop */
+    static final long BATCH_KEEP_ALIVE_SECONDS = 30;
+
+    private synchronized ExecutorService getBatchExecutor() {
+        if (batchExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            batchExecutor = new ThreadPoolExecutor(threads, threads, BATCH_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "langdetect-batch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            // idle threads (and the detectors they hold) don't outlive the batches
+            batchExecutor.allowCoreThreadTimeOut(true);
+        }
+        return batchExecutor;
+    }
+
+    /**
+     * Detect the languages of a batch of texts in parallel, with the default detection parameters.
+     *
+     * @param texts the target texts
+     * @return detection results, in the order of the texts
+     * @throws InterruptedException if interrupted while waiting for the detections
+     * @see #detectAll(List)
+     */
+    public List<DetectionResult> detectAll(CharSequence[] texts) throws InterruptedException {
+        return detectAll(Arrays.asList(texts));
+    }
+
+    /**
+     * Cache detection results, shared by the detectors and pools created by this factory afterwards.
+     * <p>
+     * Results are keyed by the cleaned target text and the detection parameters,
+     * and the least recently used ones are evicted first.
+     * The cache is emptied whenever profiles are loaded or cleared.
+     * The default is no cache.
+     * @param maxEntries maximum number of cached results (0 to disable the cache)
+     * @throws IllegalArgumentException if the size is negative
+     * @see DetectionCache
+     */
+    public synchronized void setCacheSize(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Cache size must be non-negative.");
+        }
+        cache = maxEntries > 0 ? new DetectionCache(maxEntries) : null;
+        if (cache != null && model != null) cache.setModel(model.matrix);
+    }
+
+    /**
+     * @return the detection result cache (with hit and miss statistics), or null if disabled
+     * @see #setCacheSize(int)
+     */
+    public synchronized DetectionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Report profile loadings and detections to a listener, e.g. to feed a metrics system.
+     * The listener also applies to the detectors and pools created by this factory afterwards.
+     * The default is no listener, in which case nothing is measured.
+     * @param listener listener (null to disable)
+     * @see DetectionListener
+     */
+    public synchronized void setDetectionListener(DetectionListener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void setSeed(long seed) {
         this.seed = seed;
+        if (model != null) model = model.withSeed(this.seed);
     }
 
     public final List<String> getLangList() {
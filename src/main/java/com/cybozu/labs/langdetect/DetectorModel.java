@@ -0,0 +1,138 @@
+package com.cybozu.labs.langdetect;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.cybozu.labs.langdetect.util.BinaryModel;
+import com.cybozu.labs.langdetect.util.CharScript;
+import com.cybozu.labs.langdetect.util.LangProbMatrix;
+import com.cybozu.labs.langdetect.util.NGramTable;
+
+/**
+ * {@link DetectorModel} is an immutable snapshot of the language profiles loaded in a {@link DetectorFactory}.
+ * <p>
+ * A model is obtained with {@link DetectorFactory#getModel()}.
+ * It is not affected by profiles loaded or cleared in the factory afterwards,
+ * so it can be shared by any number of threads without locking.
+ * {@link Detector} instances are constructed from a model with {@link Detector#Detector(DetectorModel)}
+ * or, to reuse them across detections, through a {@link DetectorPool}.
+ *
+ * @see DetectorFactory#getModel()
+ * @see DetectorPool
+ *
+ * @author Alexis Meneses
+ */
+public final class DetectorModel {
+    /** minimum share of the characters of a profile for its language to use a script */
+    private static final double MIN_SCRIPT_SHARE = 0.01;
+
+    final List<String> langlist;
+    final NGramTable ids;
+    final LangProbMatrix matrix;
+    final Long seed;
+    /** languages using each script, computed on first use */
+    private volatile boolean[][] scriptLanguages = null;
+
+    DetectorModel(List<String> langlist, NGramTable ids, LangProbMatrix matrix, Long seed) {
+        this.langlist = Collections.unmodifiableList(new ArrayList<String>(langlist));
+        this.ids = ids;
+        this.matrix = matrix;
+        this.seed = seed;
+    }
+
+    /**
+     * Get a copy of this model using another random seed
+     * @param seed random seed of the detectors (null for none)
+     * @return model sharing the same profiles
+     */
+    DetectorModel withSeed(Long seed) {
+        return new DetectorModel(langlist, ids, matrix, seed);
+    }
+
+    /**
+     * Get a view of this model restricted to some languages.
+     * <p>
+     * The view shares the n-gram dictionary of this model but its probability matrix
+     * only holds the chosen languages, so detectors constructed from it only score those.
+     * Any number of views can be derived from the same model.
+     * @param languages languages of the view, in the order of their index
+     * @return model restricted to the languages
+     * @throws IllegalArgumentException if a language is unknown or duplicated, or if the list is empty
+     */
+    public DetectorModel subset(List<String> languages) {
+        if (languages.isEmpty()) {
+            throw new IllegalArgumentException("No language selected");
+        }
+        int[] columns = new int[languages.size()];
+        boolean[] selected = new boolean[langlist.size()];
+        for (int j = 0; j < columns.length; ++j) {
+            String lang = languages.get(j);
+            int index = langlist.indexOf(lang);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown language: " + lang);
+            }
+            if (selected[index]) {
+                throw new IllegalArgumentException("Duplicate language: " + lang);
+            }
+            selected[index] = true;
+            columns[j] = index;
+        }
+        return new DetectorModel(languages, ids, matrix.selectLanguages(columns), seed);
+    }
+
+    /**
+     * Get the languages using each script, derived from the character (1-gram) probabilities of their profiles:
+     * a language uses a script if its characters make up at least 1% of the characters of its profile.
+     * @return for each script id (see {@link CharScript}), whether each language uses it
+     */
+    boolean[][] scriptLanguages() {
+        boolean[][] result = scriptLanguages;
+        if (result != null) return result;
+
+        int languages = langlist.size();
+        double[][] share = new double[CharScript.count()][languages];
+        double[] row = new double[languages];
+        for (int id = 0; id < ids.size(); ++id) {
+            long key = ids.keyOf(id);
+            if ((key >>> 16) != 1) continue;
+            int script = CharScript.of((char) key);
+            if (script == CharScript.NONE) continue;
+            matrix.getRow(id, row);
+            for (int i = 0; i < languages; ++i) share[script][i] += row[i];
+        }
+        result = new boolean[share.length][languages];
+        for (int script = 0; script < share.length; ++script) {
+            for (int i = 0; i < languages; ++i) result[script][i] = share[script][i] >= MIN_SCRIPT_SHARE;
+        }
+        scriptLanguages = result;
+        return result;
+    }
+
+    /**
+     * @return the languages of the model, in the order of their index
+     */
+    public List<String> getLangList() {
+        return langlist;
+    }
+
+    /**
+     * @return number of n-grams in the model
+     */
+    public int getNGramCount() {
+        return ids.size();
+    }
+
+    /**
+     * Write the model in binary format, to be loaded with {@link DetectorFactory#loadModel(java.io.File)}.
+     * The random seed is not part of the written model.
+     * @param os output stream (not closed; buffering is recommended)
+     * @throws IOException in case of I/O error
+     * @see BinaryModel
+     */
+    public void write(OutputStream os) throws IOException {
+        BinaryModel.write(os, langlist, ids, matrix);
+    }
+}
@@ -0,0 +1,159 @@
+package com.cybozu.labs.langdetect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * {@link DetectorPool} provides ready {@link Detector} instances to any number of threads.
+ * <p>
+ * Each thread gets its own detector, created on first use as a copy of a prototype detector
+ * (sharing its immutable {@link DetectorModel} and its parameters) and then reused for every
+ * detection of that thread. Detection through a pool thus needs neither locking nor per-request setup.
+ * <p>
+ * A pool is usually constructed via {@link DetectorFactory#createPool()}:
+ * <pre>
+ * DetectorPool pool = factory.createPool();
+ * // from any thread
+ * String lang = pool.detect(text);
+ * </pre>
+ * Detectors are held in a {@link ThreadLocal}: a detector is released when its thread ends,
+ * but a long-lived thread (e.g. of an executor or a server) may keep it, and the model it references,
+ * after the pool is discarded, until that thread happens to purge its stale thread-local values.
+ * A pool is therefore meant to be kept for as long as its model is used, rather than created per request.
+ *
+ * @see DetectorFactory#createPool()
+ *
+ * @author Alexis Meneses
+ */
+public class DetectorPool {
+    private final Detector prototype;
+    private final ThreadLocal<Detector> detectors;
+
+    /**
+     * Constructor.
+     * @param prototype detector whose model and parameters are copied by the pooled detectors
+     *                  (its target text is not used)
+     */
+    public DetectorPool(Detector prototype) {
+        this.prototype = new Detector(prototype);
+        this.detectors = new ThreadLocal<Detector>() {
+            @Override
+            protected Detector initialValue() {
+                return new Detector(DetectorPool.this.prototype);
+            }
+        };
+    }
+
+    /**
+     * @return the model shared by the pooled detectors
+     */
+    public DetectorModel getModel() {
+        return prototype.getModel();
+    }
+
+    /**
+     * Get the detector of the current thread, ready for a new detection
+     * @return detector owned by the current thread
+     */
+    Detector acquire() {
+        Detector detector = detectors.get();
+        detector.reset();
+        return detector;
+    }
+
+    /**
+     * Detect language of a text and return the language name which has the highest probability.
+     * @param text the target text
+     * @return detected language name which has most probability.
+     * @throws NoFeatureInTextException Can't detect because of no valid features in text
+     * @see Detector#detect()
+     */
+    public String detect(CharSequence text) {
+        Detector detector = acquire();
+        detector.append(text);
+        return detector.detect();
+    }
+
+    /**
+     * Detect language of a text and return the language name which has the highest probability.
+     * @param text array containing the target text
+     * @param offset index of the first character of the text
+     * @param length number of characters of the text
+     * @return detected language name which has most probability.
+     * @throws NoFeatureInTextException Can't detect because of no valid features in text
+     * @see Detector#append(char[], int, int)
+     */
+    public String detect(char[] text, int offset, int length) {
+        Detector detector = acquire();
+        detector.append(text, offset, length);
+        return detector.detect();
+    }
+
+    /**
+     * Get language candidates of a text which have high probabilities
+     * @param text the target text
+     * @return possible languages list (whose probabilities are over PROB_THRESHOLD, ordered by decreasing probabilities)
+     * @throws NoFeatureInTextException Can't detect because of no valid features in text
+     * @see Detector#getProbabilities()
+     */
+    public List<LanguageProbability> getProbabilities(CharSequence text) {
+        Detector detector = acquire();
+        detector.append(text);
+        return detector.getProbabilities();
+    }
+
+    /**
+     * Detect the languages of a batch of texts in parallel.
+     * <p>
+     * The texts are split into contiguous chunks run by the executor's threads,
+     * each thread reusing its own detector for all the texts of its chunks.
+     * A failure on one text (e.g. {@link NoFeatureInTextException}) is reported in its result
+     * and doesn't abort the batch.
+     *
+     * @param texts the target texts
+     * @param executor executor running the detections
+     * @return detection results, in the order of the texts
+     * @throws InterruptedException if interrupted while waiting for the detections
+     */
+    public List<DetectionResult> detectAll(final List<? extends CharSequence> texts, ExecutorService executor)
+            throws InterruptedException {
+        final DetectionResult[] results = new DetectionResult[texts.size()];
+        int chunks = Math.min(texts.size(), Runtime.getRuntime().availableProcessors() * 4);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+        for (int c = 0; c < chunks; ++c) {
+            final int from = (int) ((long) texts.size() * c / chunks);
+            final int to = (int) ((long) texts.size() * (c + 1) / chunks);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    detectRange(texts, from, to, results);
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Batch detection failed", e.getCause());
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private void detectRange(List<? extends CharSequence> texts, int from, int to, DetectionResult[] results) {
+        for (int i = from; i < to; ++i) {
+            Detector detector = acquire();
+            try {
+                detector.append(texts.get(i));
+                results[i] = new DetectionResult(detector.getProbabilities());
+            } catch (RuntimeException e) {
+                results[i] = new DetectionResult(e);
+            }
+        }
+    }
+}
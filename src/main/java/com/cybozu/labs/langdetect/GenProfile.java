@@ -1,11 +1,15 @@
 package com.cybozu.labs.langdetect;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
 
 import javax.xml.stream.XMLInputFactory;
@@ -115,4 +119,45 @@ public class GenProfile {
         }
         return profile;
     }
+
+    /**
+     * Compile JSON language profiles into a binary model file
+     * which can be loaded with {@link DetectorFactory#loadModel(File)}
+     * @param profileDirectory directory of the JSON profiles
+     * @param modelFile model file to write
+     * @param floatPrecision true to store probabilities in single precision
+     * @param sparseModel true to store only non-zero probabilities
+     * @return the compiled model
+     * @throws IOException Can't read the profiles or write the model file
+     */
+    public static DetectorModel compileProfiles(File profileDirectory, File modelFile,
+            boolean floatPrecision, boolean sparseModel) throws IOException {
+        File[] files = profileDirectory.listFiles();
+        if (files == null) {
+            throw new IOException("Couldn't open directory or directory is empty: " + profileDirectory);
+        }
+        // same language order as the profiles.lst of the bundled profiles
+        Arrays.sort(files);
+
+        DetectorFactory factory = DetectorFactory.newInstance();
+        for (File file : files) {
+            if (file.getName().startsWith(".") || !file.isFile() || file.getName().equals("profiles.lst")) continue;
+            factory.loadProfile(file);
+        }
+        factory.setFloatPrecision(floatPrecision);
+        factory.setSparseModel(sparseModel);
+        factory.setFrequencyOrder(true);
+        DetectorModel model = factory.getModel();
+
+        OutputStream os = null;
+        try {
+            os = new BufferedOutputStream(new FileOutputStream(modelFile));
+            model.write(os);
+        } finally {
+            try {
+                if (os != null) os.close();
+            } catch (IOException e) {}
+        }
+        return model;
+    }
 }
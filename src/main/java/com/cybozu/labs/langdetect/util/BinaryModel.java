@@ -0,0 +1,367 @@
+package com.cybozu.labs.langdetect.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link BinaryModel} reads and writes compiled language models in a compact binary format.
+ * <p>
+ * The format stores the model exactly as the detectors use it, so that loading it
+ * is a single bulk copy into the model arrays instead of decoding JSON profiles. All numbers are big-endian:
+ * <pre>
+ * int      magic ("LDMD")
+ * int      format version
+ * int      flags (1: single precision, 2: sparse layout)
+ * int      number of languages, then for each language: int length + UTF-8 bytes of its name
+ * int      number of n-grams
+ * long[]   packed key of each n-gram (see {@link NGram#encode(CharSequence)}), in id order
+ * dense:   double[] or float[] row-major probabilities (n-grams x languages)
+ * sparse:  int[] row offsets (n-grams + 1), short[] language indexes, double[] or float[] probabilities
+ * </pre>
+ * Users don't use this class directly.
+ *
+ * @author Alexis Meneses
+ */
+public class BinaryModel {
+    /** "LDMD" */
+    public static final int MAGIC = 0x4c444d44;
+    public static final int VERSION = 1;
+
+    private static final int FLAG_FLOAT = 1;
+    private static final int FLAG_SPARSE = 2;
+
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    private final List<String> langlist;
+    private final NGramTable ids;
+    private final LangProbMatrix matrix;
+
+    private BinaryModel(List<String> langlist, NGramTable ids, LangProbMatrix matrix) {
+        this.langlist = langlist;
+        this.ids = ids;
+        this.matrix = matrix;
+    }
+
+    /**
+     * @return languages of the model, in the order of their index
+     */
+    public List<String> getLangList() {
+        return langlist;
+    }
+
+    /**
+     * @return n-gram ids of the model
+     */
+    public NGramTable getIds() {
+        return ids;
+    }
+
+    /**
+     * @return language probabilities of the model
+     */
+    public LangProbMatrix getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * Write a model
+     * @param os output stream (buffering is recommended)
+     * @param langlist languages of the model
+     * @param ids n-gram ids of the model
+     * @param matrix language probabilities of the model
+     * @throws IOException in case of I/O error
+     */
+    public static void write(OutputStream os, List<String> langlist, NGramTable ids, LangProbMatrix matrix) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        boolean sparse = matrix instanceof SparseLangProbMatrix;
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt((matrix.isFloat() ? FLAG_FLOAT : 0) | (sparse ? FLAG_SPARSE : 0));
+        out.writeInt(langlist.size());
+        for (String lang : langlist) {
+            byte[] name = lang.getBytes("UTF-8");
+            out.writeInt(name.length);
+            out.write(name);
+        }
+        out.writeInt(ids.size());
+        for (int id = 0; id < ids.size(); ++id) out.writeLong(ids.keyOf(id));
+
+        if (sparse) {
+            SparseLangProbMatrix sparseMatrix = (SparseLangProbMatrix) matrix;
+            for (int offset : sparseMatrix.rowStart()) out.writeInt(offset);
+            for (short lang : sparseMatrix.langIndex()) out.writeShort(lang);
+            writeValues(out, sparseMatrix.doubles(), sparseMatrix.floats());
+        } else {
+            DenseLangProbMatrix denseMatrix = (DenseLangProbMatrix) matrix;
+            writeValues(out, denseMatrix.doubles(), denseMatrix.floats());
+        }
+        out.flush();
+    }
+
+    private static void writeValues(DataOutputStream out, double[] doubles, float[] floats) throws IOException {
+        if (doubles != null) {
+            for (double value : doubles) out.writeDouble(value);
+        } else {
+            for (float value : floats) out.writeFloat(value);
+        }
+    }
+
+    /**
+     * Read a model from a buffer (typically a memory-mapped file).
+     * The values are copied into heap arrays: the model doesn't keep a reference to the buffer.
+     * The buffer position is moved to the end of the model.
+     * @param buffer buffer containing the model
+     * @return decoded model
+     * @throws IOException if the buffer doesn't contain a valid model
+     */
+    public static BinaryModel read(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return read(new Input(buffer, null));
+    }
+
+    /**
+     * Read a model from a stream.
+     * The stream is read through a small buffer straight into the arrays of the model,
+     * so that the model bytes are never held in memory as a whole.
+     * Bytes following the model may be consumed from the stream; the stream is not closed.
+     * @param is stream containing the model
+     * @return decoded model
+     * @throws IOException in case of I/O error or if the stream doesn't contain a valid model
+     */
+    public static BinaryModel read(InputStream is) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+        buffer.flip();
+        return read(new Input(buffer, Channels.newChannel(is)));
+    }
+
+    private static BinaryModel read(Input in) throws IOException {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a language model file");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported language model format version: " + version);
+            }
+            int flags = in.getInt();
+            boolean floatPrecision = (flags & FLAG_FLOAT) != 0;
+
+            boolean sparse = (flags & FLAG_SPARSE) != 0;
+
+            int languages = in.getInt();
+            if (sparse && languages > SparseLangProbMatrix.MAX_LANGUAGES) {
+                throw new IOException("Too many languages for a sparse model: " + languages);
+            }
+            // each language takes at least the int length of its name
+            List<String> langlist = new ArrayList<String>(in.checkCount(languages, 4));
+            for (int i = 0; i < languages; ++i) {
+                langlist.add(new String(in.getBytes(in.getInt()), "UTF-8"));
+            }
+
+            int rows = in.getInt();
+            NGramTable ids = new NGramTable(in.checkCount(rows, 8));
+            in.getKeys(ids, rows);
+
+            LangProbMatrix matrix;
+            if (sparse) {
+                int[] rowStart = in.getInts(rows + 1);
+                checkRowStart(rowStart);
+                int pairs = rowStart[rows];
+                short[] langIndex = in.getShorts(pairs);
+                checkLangIndex(langIndex, languages);
+                if (floatPrecision) {
+                    matrix = new SparseLangProbMatrix(rowStart, langIndex, in.getFloats(pairs), languages);
+                } else {
+                    matrix = new SparseLangProbMatrix(rowStart, langIndex, in.getDoubles(pairs), languages);
+                }
+            } else {
+                long size = (long) rows * languages;
+                if (size > Integer.MAX_VALUE) throw new IOException("Language model format error");
+                int length = (int) size;
+                if (floatPrecision) {
+                    matrix = new DenseLangProbMatrix(in.getFloats(length), languages);
+                } else {
+                    matrix = new DenseLangProbMatrix(in.getDoubles(length), languages);
+                }
+            }
+            return new BinaryModel(Collections.unmodifiableList(langlist), ids, matrix);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, NegativeArraySizeException, IllegalArgumentException...
+            throw new IOException("Language model format error", e);
+        }
+    }
+
+    /**
+     * Check that the row offsets of a sparse matrix start at 0 and never decrease
+     * @throws IOException if they don't
+     */
+    private static void checkRowStart(int[] rowStart) throws IOException {
+        if (rowStart[0] != 0) throw new IOException("Language model format error");
+        for (int row = 1; row < rowStart.length; ++row) {
+            if (rowStart[row] < rowStart[row - 1]) throw new IOException("Language model format error");
+        }
+    }
+
+    /**
+     * Check that the language indexes of a sparse matrix are those of existing languages
+     * @throws IOException if they aren't
+     */
+    private static void checkLangIndex(short[] langIndex, int languages) throws IOException {
+        for (short lang : langIndex) {
+            if ((lang & 0xffff) >= languages) throw new IOException("Language model format error");
+        }
+    }
+
+    /**
+     * Big-endian input over a whole buffer, or over a buffer refilled from a channel.
+     * Arrays are filled in bulk from views of the buffer, so that each value is copied once.
+     * The counts read from the model are never trusted for allocation: over a whole buffer they
+     * must fit in its remaining bytes, and over a channel arrays grow as their values arrive,
+     * so that a corrupt count ends with an {@link IOException} rather than an {@link OutOfMemoryError}.
+     */
+    private static final class Input {
+        private final ByteBuffer buffer;
+        private final ReadableByteChannel channel;
+
+        Input(ByteBuffer buffer, ReadableByteChannel channel) {
+            this.buffer = buffer;
+            this.channel = channel;
+        }
+
+        /**
+         * Make sure at least the given number of bytes (at most the buffer capacity) is available
+         * @throws BufferUnderflowException if the input ends before
+         */
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) return;
+            if (channel == null) throw new BufferUnderflowException();
+            buffer.compact();
+            try {
+                while (buffer.position() < bytes) {
+                    if (channel.read(buffer) < 0) throw new BufferUnderflowException();
+                }
+            } finally {
+                buffer.flip();
+            }
+        }
+
+        /**
+         * Make values of the given size available
+         * @return number of values to read from the buffer, at most count
+         */
+        private int available(int count, int size) throws IOException {
+            require(Math.min(count, buffer.capacity() / size) * size);
+            return Math.min(count, buffer.remaining() / size);
+        }
+
+        private void advance(int count, int size) {
+            buffer.position(buffer.position() + count * size);
+        }
+
+        int getInt() throws IOException {
+            require(4);
+            return buffer.getInt();
+        }
+
+        /**
+         * Check a count read from the model
+         * @param count number of values
+         * @param size minimum size of each value in bytes
+         * @return length to allocate first for these values
+         * @throws IOException if the count is negative, or larger than the input when it is a whole buffer
+         */
+        int checkCount(int count, int size) throws IOException {
+            if (count < 0 || (channel == null && count > buffer.remaining() / size)) {
+                throw new IOException("Language model format error");
+            }
+            return channel == null ? count : Math.min(count, buffer.capacity() / size);
+        }
+
+        /**
+         * @return array twice as long (at most count) with the same first values
+         */
+        private static Object grow(Object values, int count) {
+            int length = Array.getLength(values);
+            Object newValues = Array.newInstance(values.getClass().getComponentType(), (int) Math.min(count, 2L * length));
+            System.arraycopy(values, 0, newValues, 0, length);
+            return newValues;
+        }
+
+        byte[] getBytes(int count) throws IOException {
+            byte[] values = new byte[checkCount(count, 1)];
+            for (int offset = 0, n; offset < count; offset += n) {
+                if (offset == values.length) values = (byte[]) grow(values, count);
+                n = Math.min(available(count - offset, 1), values.length - offset);
+                buffer.get(values, offset, n);
+            }
+            return values;
+        }
+
+        void getKeys(NGramTable ids, int count) throws IOException {
+            for (int id = 0, n; id < count; ) {
+                n = available(count - id, 8);
+                LongBuffer keys = buffer.asLongBuffer();
+                for (int i = 0; i < n; ++i, ++id) {
+                    if (ids.put(keys.get(i)) != id) throw new IOException("Duplicate n-gram in language model");
+                }
+                advance(n, 8);
+            }
+        }
+
+        int[] getInts(int count) throws IOException {
+            int[] values = new int[checkCount(count, 4)];
+            for (int offset = 0, n; offset < count; offset += n) {
+                if (offset == values.length) values = (int[]) grow(values, count);
+                n = Math.min(available(count - offset, 4), values.length - offset);
+                buffer.asIntBuffer().get(values, offset, n);
+                advance(n, 4);
+            }
+            return values;
+        }
+
+        short[] getShorts(int count) throws IOException {
+            short[] values = new short[checkCount(count, 2)];
+            for (int offset = 0, n; offset < count; offset += n) {
+                if (offset == values.length) values = (short[]) grow(values, count);
+                n = Math.min(available(count - offset, 2), values.length - offset);
+                buffer.asShortBuffer().get(values, offset, n);
+                advance(n, 2);
+            }
+            return values;
+        }
+
+        float[] getFloats(int count) throws IOException {
+            float[] values = new float[checkCount(count, 4)];
+            for (int offset = 0, n; offset < count; offset += n) {
+                if (offset == values.length) values = (float[]) grow(values, count);
+                n = Math.min(available(count - offset, 4), values.length - offset);
+                buffer.asFloatBuffer().get(values, offset, n);
+                advance(n, 4);
+            }
+            return values;
+        }
+
+        double[] getDoubles(int count) throws IOException {
+            double[] values = new double[checkCount(count, 8)];
+            for (int offset = 0, n; offset < count; offset += n) {
+                if (offset == values.length) values = (double[]) grow(values, count);
+                n = Math.min(available(count - offset, 8), values.length - offset);
+                buffer.asDoubleBuffer().get(values, offset, n);
+                advance(n, 8);
+            }
+            return values;
+        }
+    }
+}
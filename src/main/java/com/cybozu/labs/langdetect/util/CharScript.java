@@ -0,0 +1,73 @@
+package com.cybozu.labs.langdetect.util;
+
+import java.lang.Character.UnicodeBlock;
+import java.util.HashMap;
+
+/**
+ * {@link CharScript} classifies letters by writing script, with a precomputed table.
+ * <p>
+ * Scripts are Unicode blocks, except that the blocks of a same script used by the profiles
+ * (e.g. the Latin or Hangul blocks) are merged.
+ * Characters which are not letters have no script.
+ * Users don't use this class directly.
+ *
+ * @author Alexis Meneses
+ */
+public final class CharScript {
+    /** script of characters which are not letters */
+    public static final int NONE = 0;
+
+    private static final UnicodeBlock[][] MERGED_BLOCKS = {
+        { UnicodeBlock.BASIC_LATIN, UnicodeBlock.LATIN_1_SUPPLEMENT, UnicodeBlock.LATIN_EXTENDED_A,
+          UnicodeBlock.LATIN_EXTENDED_B, UnicodeBlock.IPA_EXTENSIONS, UnicodeBlock.LATIN_EXTENDED_ADDITIONAL },
+        { UnicodeBlock.GREEK, UnicodeBlock.GREEK_EXTENDED },
+        { UnicodeBlock.CYRILLIC, UnicodeBlock.CYRILLIC_SUPPLEMENTARY },
+        { UnicodeBlock.ARABIC, UnicodeBlock.ARABIC_PRESENTATION_FORMS_A, UnicodeBlock.ARABIC_PRESENTATION_FORMS_B },
+        { UnicodeBlock.HANGUL_SYLLABLES, UnicodeBlock.HANGUL_JAMO, UnicodeBlock.HANGUL_COMPATIBILITY_JAMO },
+        { UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS, UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A,
+          UnicodeBlock.CJK_COMPATIBILITY_IDEOGRAPHS },
+    };
+
+    private static final byte[] SCRIPTS = new byte[0x10000];
+    private static final int COUNT;
+
+    static {
+        HashMap<UnicodeBlock, Integer> ids = new HashMap<UnicodeBlock, Integer>();
+        int count = NONE + 1;
+        for (UnicodeBlock[] blocks : MERGED_BLOCKS) {
+            for (UnicodeBlock block : blocks) ids.put(block, count);
+            ++count;
+        }
+        for (int c = 0; c < SCRIPTS.length; ++c) {
+            if (!Character.isLetter((char) c)) continue;
+            UnicodeBlock block = UnicodeBlock.of((char) c);
+            if (block == null) continue;
+            Integer id = ids.get(block);
+            if (id == null) {
+                if (count > 0xff) continue;
+                id = count++;
+                ids.put(block, id);
+            }
+            SCRIPTS[c] = (byte) id.intValue();
+        }
+        COUNT = count;
+    }
+
+    private CharScript() {
+    }
+
+    /**
+     * @param ch character
+     * @return script of the character ({@link #NONE} if it is not a letter)
+     */
+    public static int of(char ch) {
+        return SCRIPTS[ch] & 0xff;
+    }
+
+    /**
+     * @return number of scripts, including {@link #NONE} (script ids are lower)
+     */
+    public static int count() {
+        return COUNT;
+    }
+}
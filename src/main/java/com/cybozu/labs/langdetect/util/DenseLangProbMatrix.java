@@ -0,0 +1,137 @@
+package com.cybozu.labs.langdetect.util;
+
+/**
+ * {@link DenseLangProbMatrix} stores all rows in a single flat primitive array,
+ * either as {@code double}s or, to halve the footprint, as {@code float}s.
+ * Users don't use this class directly.
+ *
+ * @author Alexis Meneses
+ */
+public class DenseLangProbMatrix extends LangProbMatrix {
+    private final double[] doubles;
+    private final float[] floats;
+
+    /**
+     * Constructor for a double precision matrix.
+     * @param values row-major probabilities (length must be a multiple of {@code languages})
+     * @param languages number of languages (row length)
+     */
+    public DenseLangProbMatrix(double[] values, int languages) {
+        this(values, null, languages);
+    }
+
+    /**
+     * Constructor for a single precision matrix.
+     * @param values row-major probabilities (length must be a multiple of {@code languages})
+     * @param languages number of languages (row length)
+     */
+    public DenseLangProbMatrix(float[] values, int languages) {
+        this(null, values, languages);
+    }
+
+    private DenseLangProbMatrix(double[] doubles, float[] floats, int languages) {
+        super(rowCount(doubles != null ? doubles.length : floats.length, languages), languages);
+        this.doubles = doubles;
+        this.floats = floats;
+    }
+
+    private static int rowCount(int length, int languages) {
+        if (languages <= 0 || length % languages != 0) {
+            throw new IllegalArgumentException("Matrix size is not a multiple of the number of languages");
+        }
+        return length / languages;
+    }
+
+    double[] doubles() {
+        return doubles;
+    }
+
+    float[] floats() {
+        return floats;
+    }
+
+    public boolean isFloat() {
+        return floats != null;
+    }
+
+    public double get(int row, int lang) {
+        int index = row * languages + lang;
+        return doubles != null ? doubles[index] : floats[index];
+    }
+
+    public void getRow(int row, double[] dest) {
+        int offset = row * languages;
+        for (int i = 0; i < languages; ++i) {
+            dest[i] = doubles != null ? doubles[offset + i] : floats[offset + i];
+        }
+    }
+
+    public void multiply(int row, double weight, double[] prob) {
+        int offset = row * languages;
+        int length = Math.min(prob.length, languages);
+        if (doubles != null) {
+            ScoringKernels.multiply(prob, doubles, offset, length, weight);
+        } else {
+            ScoringKernels.multiply(prob, floats, offset, length, weight);
+        }
+    }
+
+    public void addTo(int row, double[] score) {
+        int offset = row * languages;
+        int length = Math.min(score.length, languages);
+        if (doubles != null) {
+            ScoringKernels.add(score, doubles, offset, length);
+        } else {
+            ScoringKernels.add(score, floats, offset, length);
+        }
+    }
+
+    public void multiply(int row, double weight, double[] prob, int[] langs, int count) {
+        int offset = row * languages;
+        if (doubles != null) {
+            ScoringKernels.multiply(prob, doubles, offset, langs, count, weight);
+        } else {
+            ScoringKernels.multiply(prob, floats, offset, langs, count, weight);
+        }
+    }
+
+    public void addTo(int row, double[] score, int[] langs, int count) {
+        int offset = row * languages;
+        if (doubles != null) {
+            ScoringKernels.add(score, doubles, offset, langs, count);
+        } else {
+            ScoringKernels.add(score, floats, offset, langs, count);
+        }
+    }
+
+    public LangProbMatrix selectLanguages(int[] columns) {
+        int width = columns.length;
+        if (doubles != null) {
+            double[] values = new double[rows * width];
+            for (int row = 0; row < rows; ++row) {
+                int offset = row * languages;
+                for (int j = 0; j < width; ++j) values[row * width + j] = doubles[offset + columns[j]];
+            }
+            return new DenseLangProbMatrix(values, width);
+        } else {
+            float[] values = new float[rows * width];
+            for (int row = 0; row < rows; ++row) {
+                int offset = row * languages;
+                for (int j = 0; j < width; ++j) values[row * width + j] = floats[offset + columns[j]];
+            }
+            return new DenseLangProbMatrix(values, width);
+        }
+    }
+
+    protected LangProbMatrix computeSmoothedLog(double weight) {
+        if (doubles != null) {
+            double[] values = new double[doubles.length];
+            for (int i = 0; i < values.length; ++i) values[i] = Math.log(weight + doubles[i]);
+            return new DenseLangProbMatrix(values, languages);
+        } else {
+            float[] values = new float[floats.length];
+            for (int i = 0; i < values.length; ++i) values[i] = (float) Math.log(weight + floats[i]);
+            return new DenseLangProbMatrix(values, languages);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.cybozu.labs.langdetect.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link LangProbMatrix} holds the language probabilities of every n-gram,
+ * one row of {@link #languages()} values per n-gram id.
+ * <p>
+ * The matrix is never modified once constructed.
+ * Scoring methods are allowed to work up to a factor (or, in log space, a term)
+ * common to all languages, which lets sparse layouts skip zero probabilities.
+ * Users don't use this class directly.
+ *
+ * @see DenseLangProbMatrix
+ * @see SparseLangProbMatrix
+ * @author Alexis Meneses
+ */
+public abstract class LangProbMatrix {
+    protected final int languages;
+    protected final int rows;
+
+    /** maximum number of log matrices kept (see {@link #smoothedLog(double)}) */
+    public static final int MAX_LOG_MATRICES = 4;
+
+    /** smoothing term of a log matrix (see {@link #smoothedLog(double)}) */
+    private double logWeight = Double.NaN;
+    /** last returned log matrix, looked up without locking */
+    private volatile LangProbMatrix logMatrix = null;
+    /** computed log matrices by smoothing term, least recently used first */
+    private LinkedHashMap<Double, LangProbMatrix> logMatrices = null;
+
+    protected LangProbMatrix(int rows, int languages) {
+        this.rows = rows;
+        this.languages = languages;
+    }
+
+    /**
+     * @return number of languages (row length)
+     */
+    public int languages() {
+        return languages;
+    }
+
+    /**
+     * @return number of n-gram rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return true if the probabilities are stored in single precision
+     */
+    public abstract boolean isFloat();
+
+    /**
+     * @param row n-gram id
+     * @param lang language index
+     * @return probability of the n-gram in the language
+     */
+    public abstract double get(int row, int lang);
+
+    /**
+     * Copy a row into an array
+     * @param row n-gram id
+     * @param dest array receiving the probabilities of the n-gram for each language
+     */
+    public abstract void getRow(int row, double[] dest);
+
+    /**
+     * Multiply language probabilities by the smoothed probabilities of an n-gram,
+     * i.e. {@code prob[i] *= weight + p(row, i)}, up to a factor common to all languages.
+     * @param row n-gram id
+     * @param weight smoothing term added to each probability
+     * @param prob language probabilities to update
+     */
+    public abstract void multiply(int row, double weight, double[] prob);
+
+    /**
+     * Add a row of a log matrix to language scores, i.e. {@code score[i] += p(row, i)},
+     * up to a term common to all languages.
+     * @param row n-gram id
+     * @param score language scores to update
+     */
+    public abstract void addTo(int row, double[] score);
+
+    /**
+     * Same as {@link #multiply(int, double, double[])} for some languages only.
+     * The probabilities of the other languages must be zero and are left zero.
+     * @param row n-gram id
+     * @param weight smoothing term added to each probability
+     * @param prob language probabilities to update
+     * @param langs indexes of the languages to update
+     * @param count number of languages to update
+     */
+    public abstract void multiply(int row, double weight, double[] prob, int[] langs, int count);
+
+    /**
+     * Same as {@link #addTo(int, double[])} for some languages only.
+     * The scores of the other languages are left undefined.
+     * @param row n-gram id
+     * @param score language scores to update
+     * @param langs indexes of the languages to update
+     * @param count number of languages to update
+     */
+    public abstract void addTo(int row, double[] score, int[] langs, int count);
+
+    /**
+     * Get a matrix restricted to some languages, with the same rows, layout and precision.
+     * @param columns indexes of the kept languages, in their order in the new matrix
+     * @return new matrix of {@code columns.length} languages
+     */
+    public abstract LangProbMatrix selectLanguages(int[] columns);
+
+    /**
+     * Get the matrix of smoothed log probabilities {@code log(weight + p)}, with the same layout and precision.
+     * The matrices of the last {@link #MAX_LOG_MATRICES} smoothing terms used are kept, so that detectors
+     * sharing a smoothing term compute it once, even when detectors with other terms use this matrix too.
+     * Each of them takes as much memory as this matrix.
+     * @param weight smoothing term added to each probability
+     * @return log probability matrix, to be used with {@link #addTo(int, double[])}
+     */
+    public LangProbMatrix smoothedLog(double weight) {
+        LangProbMatrix last = logMatrix;
+        if (last != null && last.logWeight == weight) return last;
+
+        synchronized (this) {
+            if (logMatrices == null) {
+                logMatrices = new LinkedHashMap<Double, LangProbMatrix>(MAX_LOG_MATRICES * 2, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Double, LangProbMatrix> eldest) {
+                        return size() > MAX_LOG_MATRICES;
+                    }
+                };
+            }
+            LangProbMatrix result = logMatrices.get(weight);
+            if (result == null) {
+                result = computeSmoothedLog(weight);
+                result.logWeight = weight;
+                logMatrices.put(weight, result);
+            }
+            logMatrix = result;
+            return result;
+        }
+    }
+
+    /**
+     * @param weight smoothing term added to each probability
+     * @return a new matrix of smoothed log probabilities
+     */
+    protected abstract LangProbMatrix computeSmoothedLog(double weight);
+}
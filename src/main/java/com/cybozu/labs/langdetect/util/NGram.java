@@ -2,6 +2,7 @@ package com.cybozu.labs.langdetect.util;
 
 import java.lang.Character.UnicodeBlock;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -13,16 +14,34 @@ import java.util.regex.Pattern;
 public class NGram {
     private static final String LATIN1_EXCLUDED = Messages.getString("NGram.LATIN1_EXCLUDE");
     public final static int N_GRAM = 3;
+    /**
+     * CJK Kanji normalization mapping.
+     * @deprecated {@link #normalize(char)} uses a precomputed table, so changes to this map are ignored
+     */
+    @Deprecated
     public static HashMap<Character, Character> cjk_map;
 
-    private StringBuilder grams_;
+    /** normalized characters, by pages of 256 (a null page is left unchanged) */
+    private static final char[][] NORMALIZED_PAGES = new char[256][];
+
+    private final char[] grams_;
+    private int length_;
     private boolean capitalword_;
 
     /**
      * Constructor.
      */
     public NGram() {
-        grams_ = new StringBuilder(" ");
+        grams_ = new char[N_GRAM];
+        reset();
+    }
+
+    /**
+     * Clear the ngram buffer so that the instance can be reused for another text.
+     */
+    public void reset() {
+        grams_[0] = ' ';
+        length_ = 1;
         capitalword_ = false;
     }
 
@@ -32,15 +51,15 @@ public class NGram {
      */
     public void addChar(char ch) {
         ch = normalize(ch);
-        char lastchar = grams_.charAt(grams_.length() - 1);
+        char lastchar = grams_[length_ - 1];
         if (lastchar == ' ') {
-            grams_ = new StringBuilder(" ");
-            capitalword_ = false;
+            reset();
             if (ch==' ') return;
-        } else if (grams_.length() >= N_GRAM) {
-            grams_.deleteCharAt(0);
+        } else if (length_ >= N_GRAM) {
+            System.arraycopy(grams_, 1, grams_, 0, N_GRAM - 1);
+            --length_;
         }
-        grams_.append(ch);
+        grams_[length_++] = ch;
 
         if (Character.isUpperCase(ch)){
             if (Character.isUpperCase(lastchar)) capitalword_ = true;
@@ -56,15 +75,70 @@ public class NGram {
      */
     public String get(int n) {
         if (capitalword_) return null;
-        int len = grams_.length();
+        int len = length_;
         if (n < 1 || n > 3 || len < n) return null;
         if (n == 1) {
-            char ch = grams_.charAt(len - 1);
+            char ch = grams_[len - 1];
             if (ch == ' ') return null;
             return Character.toString(ch);
         } else {
-            return grams_.substring(len - n, len);
+            return new String(grams_, len - n, n);
+        }
+    }
+
+    /**
+     * Get n-Gram as a packed key, without allocating any String.
+     * This is equivalent to {@code NGram.encode(get(n))}.
+     * @param n length of n-gram
+     * @return packed n-gram key (0 if it is invalid)
+     * @see #encode(CharSequence)
+     */
+    public long getKey(int n) {
+        if (capitalword_) return 0;
+        int len = length_;
+        if (n < 1 || n > 3 || len < n) return 0;
+        if (n == 1 && grams_[len - 1] == ' ') return 0;
+        long key = n;
+        for (int i = len - n; i < len; ++i) {
+            key = (key << 16) | grams_[i];
+        }
+        return key;
+    }
+
+    /**
+     * Pack an n-gram (N=1,2,3) into a single {@code long} key.
+     * The key holds the n-gram length in its upper bits followed by
+     * the 16-bit chars, so n-grams of different lengths never collide.
+     * @param gram n-gram
+     * @return packed key (0 if the n-gram is null or its length is invalid)
+     */
+    public static long encode(CharSequence gram) {
+        if (gram == null) return 0;
+        int len = gram.length();
+        if (len < 1 || len > N_GRAM) return 0;
+        long key = len;
+        for (int i = 0; i < len; ++i) {
+            key = (key << 16) | gram.charAt(i);
+        }
+        return key;
+    }
+
+    /**
+     * Unpack a key built by {@link #encode(CharSequence)}
+     * @param key packed n-gram key
+     * @return n-gram String (null if the key is invalid)
+     */
+    public static String decode(long key) {
+        int len = (int) (key >>> (16 * N_GRAM));
+        if (len == 0) len = (int) (key >>> 32);
+        if (len == 0) len = (int) (key >>> 16);
+        if (len < 1 || len > N_GRAM) return null;
+        char[] chars = new char[len];
+        for (int i = len - 1; i >= 0; --i) {
+            chars[i] = (char) key;
+            key >>>= 16;
         }
+        return new String(chars);
     }
 
     /**
@@ -73,6 +147,14 @@ public class NGram {
      * @return Normalized character
      */
     public static char normalize(char ch) {
+        char[] page = NORMALIZED_PAGES[ch >> 8];
+        return page == null ? ch : page[ch & 0xff];
+    }
+
+    /**
+     * Character normalization by Unicode block, used to build the normalization table
+     */
+    private static char normalizeByBlock(char ch, Map<Character, Character> cjk_map) {
         Character.UnicodeBlock block = Character.UnicodeBlock.of(ch);
         if (block == UnicodeBlock.BASIC_LATIN) {
             if (ch<'A' || (ch<'a' && ch >'Z') || ch>'z') ch = ' ';
@@ -122,14 +204,14 @@ public class NGram {
         return buf.toString();
     }
 
-    private static final String[] NORMALIZED_VI_CHARS = {
+    static final String[] NORMALIZED_VI_CHARS = {
             Messages.getString("NORMALIZED_VI_CHARS_0300"),
             Messages.getString("NORMALIZED_VI_CHARS_0301"),
             Messages.getString("NORMALIZED_VI_CHARS_0303"),
             Messages.getString("NORMALIZED_VI_CHARS_0309"),
             Messages.getString("NORMALIZED_VI_CHARS_0323") };
-    private static final String TO_NORMALIZE_VI_CHARS = Messages.getString("TO_NORMALIZE_VI_CHARS");
-    private static final String DMARK_CLASS = Messages.getString("DMARK_CLASS");
+    static final String TO_NORMALIZE_VI_CHARS = Messages.getString("TO_NORMALIZE_VI_CHARS");
+    static final String DMARK_CLASS = Messages.getString("DMARK_CLASS");
     private static final Pattern ALPHABET_WITH_DMARK = Pattern.compile("([" + TO_NORMALIZE_VI_CHARS + "])(["
             + DMARK_CLASS + "])");
 
@@ -272,6 +354,26 @@ public class NGram {
                 cjk_map.put(cjk_list.charAt(i), representative);
             }
         }
+
+        // identical pages (such as Hangul syllables) are shared
+        HashMap<String, char[]> pages = new HashMap<String, char[]>();
+        for (int p = 0; p < NORMALIZED_PAGES.length; ++p) {
+            char[] page = new char[256];
+            boolean identity = true;
+            for (int i = 0; i < page.length; ++i) {
+                char ch = (char) (p << 8 | i);
+                page[i] = normalizeByBlock(ch, cjk_map);
+                if (page[i] != ch) identity = false;
+            }
+            if (identity) continue;
+            String content = new String(page);
+            char[] shared = pages.get(content);
+            if (shared == null) {
+                pages.put(content, page);
+                shared = page;
+            }
+            NORMALIZED_PAGES[p] = shared;
+        }
     }
 
 }
@@ -0,0 +1,139 @@
+package com.cybozu.labs.langdetect.util;
+
+import java.util.Arrays;
+
+/**
+ * {@link NGramTable} is an open-addressing hash table mapping packed n-gram keys
+ * (see {@link NGram#encode(CharSequence)}) to dense ids.
+ * <p>
+ * Ids are assigned in insertion order starting from 0, so they can be used
+ * directly as row indexes into the language probability arrays.
+ * Keys are primitive {@code long}s, so lookups neither box nor hash strings.
+ * Users don't use this class directly.
+ *
+ * @author Alexis Meneses
+ */
+public class NGramTable {
+    /** Key value marking an empty slot (never produced by {@link NGram#encode(CharSequence)}) */
+    private static final long EMPTY = 0L;
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private long[] slotKeys;
+    private int[] slotIds;
+    private long[] idKeys;
+    private int size;
+    private int mask;
+
+    /**
+     * Constructor.
+     */
+    public NGramTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     * @param expectedSize expected number of n-grams
+     */
+    public NGramTable(int expectedSize) {
+        int slots = 16;
+        while (slots < expectedSize * 2) slots <<= 1;
+        slotKeys = new long[slots];
+        slotIds = new int[slots];
+        idKeys = new long[Math.max(expectedSize, 16)];
+        mask = slots - 1;
+        size = 0;
+    }
+
+    /**
+     * @return number of n-grams in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Look up the id of an n-gram key
+     * @param key packed n-gram key
+     * @return id of the n-gram, or -1 if the key is unknown
+     */
+    public int get(long key) {
+        if (key == EMPTY) return -1;
+        int slot = hash(key) & mask;
+        while (true) {
+            long k = slotKeys[slot];
+            if (k == key) return slotIds[slot];
+            if (k == EMPTY) return -1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Add an n-gram key if not present yet
+     * @param key packed n-gram key (must not be 0)
+     * @return id of the n-gram (existing or newly assigned)
+     */
+    public int put(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Invalid n-gram key");
+        }
+        int slot = hash(key) & mask;
+        while (true) {
+            long k = slotKeys[slot];
+            if (k == key) return slotIds[slot];
+            if (k == EMPTY) break;
+            slot = (slot + 1) & mask;
+        }
+        int id = size++;
+        slotKeys[slot] = key;
+        slotIds[slot] = id;
+        if (id >= idKeys.length) {
+            long[] newIdKeys = new long[idKeys.length * 2];
+            System.arraycopy(idKeys, 0, newIdKeys, 0, idKeys.length);
+            idKeys = newIdKeys;
+        }
+        idKeys[id] = key;
+        if (size * 2 > slotKeys.length) rehash(slotKeys.length * 2);
+        return id;
+    }
+
+    /**
+     * @param id n-gram id
+     * @return packed key of the n-gram having this id
+     */
+    public long keyOf(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown n-gram id: " + id);
+        }
+        return idKeys[id];
+    }
+
+    /**
+     * Remove all n-grams
+     */
+    public void clear() {
+        Arrays.fill(slotKeys, EMPTY);
+        size = 0;
+    }
+
+    private void rehash(int slots) {
+        long[] oldKeys = slotKeys;
+        int[] oldIds = slotIds;
+        slotKeys = new long[slots];
+        slotIds = new int[slots];
+        mask = slots - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            long key = oldKeys[i];
+            if (key == EMPTY) continue;
+            int slot = hash(key) & mask;
+            while (slotKeys[slot] != EMPTY) slot = (slot + 1) & mask;
+            slotKeys[slot] = key;
+            slotIds[slot] = oldIds[i];
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,256 @@
+package com.cybozu.labs.langdetect.util;
+
+/**
+ * {@link ScoringKernels} gathers the per-language loops of language scoring,
+ * so that the matrices and the detector share a single implementation of each.
+ * <p>
+ * The contiguous kernels ({@code multiply}, {@code add} and {@link #normalize(double[], int)})
+ * are vectorised with the Vector API when it is available: the jar is a multi-release jar
+ * whose {@code META-INF/versions/N} holds {@code VectorApiKernels}, N being the Java version of the build (16+).
+ * It is used on Java N or later when the JVM is started with {@code --add-modules jdk.incubator.vector}.
+ * Otherwise the kernels are plain scalar loops, except that {@link #normalize(double[], int)}
+ * splits its sum into independent accumulators so that it is not serialised on a single
+ * floating point dependency chain. When the {@code langdetect.scalarKernels} system property
+ * is true, all the kernels are the plain scalar loops, including the reference
+ * {@link #normalizeScalar(double[], int)}, which is also used for short rows.
+ * The vectorised {@code multiply} and {@code add} give exactly the results of the scalar loops.
+ * Both fast normalizations multiply by the reciprocal of the sum instead of dividing each element,
+ * so their results may differ from the reference {@link #normalizeScalar(double[], int)} in the last bits.
+ * The kernels restricted to some languages are always scalar loops.
+ * Users don't use this class directly.
+ *
+ * @author Alexis Meneses
+ */
+public final class ScoringKernels {
+    /** true if the scalar kernels are forced with {@code -Dlangdetect.scalarKernels=true} */
+    public static final boolean SCALAR_KERNELS = Boolean.getBoolean("langdetect.scalarKernels");
+
+    /** name of the Vector API implementation, only present in {@code META-INF/versions/N} */
+    private static final String VECTOR_KERNELS_CLASS = "com.cybozu.labs.langdetect.util.VectorApiKernels";
+
+    /** vectorised kernels, or null if they are disabled or not available on this JVM */
+    static final VectorKernels VECTOR = SCALAR_KERNELS ? null : loadVectorKernels();
+
+    /** rows shorter than this don't benefit from split accumulators */
+    private static final int MIN_SPLIT_LENGTH = 8;
+
+    private ScoringKernels() {
+    }
+
+    private static VectorKernels loadVectorKernels() {
+        try {
+            return (VectorKernels) Class.forName(VECTOR_KERNELS_CLASS).getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            return null;    // older Java than the versioned classes, no multi-release jar, or unsupported shape
+        } catch (LinkageError e) {
+            return null;    // jdk.incubator.vector not added to the JVM
+        }
+    }
+
+    /**
+     * @return true if the contiguous kernels run on the Vector API
+     */
+    public static boolean isVectorized() {
+        return VECTOR != null;
+    }
+
+    /**
+     * {@code prob[i] *= weight + row[offset + i]} for {@code i < length}
+     * @param prob probabilities to update
+     * @param row matrix values
+     * @param offset offset of the row in the matrix values
+     * @param length number of languages to update
+     * @param weight smoothing term
+     */
+    public static void multiply(double[] prob, double[] row, int offset, int length, double weight) {
+        if (VECTOR != null) {
+            VECTOR.multiply(prob, row, offset, length, weight);
+            return;
+        }
+        for (int i = 0; i < length; ++i) {
+            prob[i] *= weight + row[offset + i];
+        }
+    }
+
+    /**
+     * {@code prob[i] *= weight + row[offset + i]} for {@code i < length}
+     * @param prob probabilities to update
+     * @param row matrix values
+     * @param offset offset of the row in the matrix values
+     * @param length number of languages to update
+     * @param weight smoothing term
+     */
+    public static void multiply(double[] prob, float[] row, int offset, int length, double weight) {
+        if (VECTOR != null) {
+            VECTOR.multiply(prob, row, offset, length, weight);
+            return;
+        }
+        for (int i = 0; i < length; ++i) {
+            prob[i] *= weight + row[offset + i];
+        }
+    }
+
+    /**
+     * {@code score[i] += row[offset + i]} for {@code i < length}
+     * @param score scores to update
+     * @param row matrix values
+     * @param offset offset of the row in the matrix values
+     * @param length number of languages to update
+     */
+    public static void add(double[] score, double[] row, int offset, int length) {
+        if (VECTOR != null) {
+            VECTOR.add(score, row, offset, length);
+            return;
+        }
+        for (int i = 0; i < length; ++i) {
+            score[i] += row[offset + i];
+        }
+    }
+
+    /**
+     * {@code score[i] += row[offset + i]} for {@code i < length}
+     * @param score scores to update
+     * @param row matrix values
+     * @param offset offset of the row in the matrix values
+     * @param length number of languages to update
+     */
+    public static void add(double[] score, float[] row, int offset, int length) {
+        if (VECTOR != null) {
+            VECTOR.add(score, row, offset, length);
+            return;
+        }
+        for (int i = 0; i < length; ++i) {
+            score[i] += row[offset + i];
+        }
+    }
+
+    /**
+     * {@code prob[l] *= weight + row[offset + l]} for the first {@code count} languages {@code l} of {@code langs}
+     * @param prob probabilities to update
+     * @param row matrix values
+     * @param offset offset of the row in the matrix values
+     * @param langs indexes of the languages to update
+     * @param count number of languages to update
+     * @param weight smoothing term
+     */
+    public static void multiply(double[] prob, double[] row, int offset, int[] langs, int count, double weight) {
+        for (int k = 0; k < count; ++k) {
+            int l = langs[k];
+            prob[l] *= weight + row[offset + l];
+        }
+    }
+
+    /**
+     * {@code prob[l] *= weight + row[offset + l]} for the first {@code count} languages {@code l} of {@code langs}
+     * @param prob probabilities to update
+     * @param row matrix values
+     * @param offset offset of the row in the matrix values
+     * @param langs indexes of the languages to update
+     * @param count number of languages to update
+     * @param weight smoothing term
+     */
+    public static void multiply(double[] prob, float[] row, int offset, int[] langs, int count, double weight) {
+        for (int k = 0; k < count; ++k) {
+            int l = langs[k];
+            prob[l] *= weight + row[offset + l];
+        }
+    }
+
+    /**
+     * {@code score[l] += row[offset + l]} for the first {@code count} languages {@code l} of {@code langs}
+     * @param score scores to update
+     * @param row matrix values
+     * @param offset offset of the row in the matrix values
+     * @param langs indexes of the languages to update
+     * @param count number of languages to update
+     */
+    public static void add(double[] score, double[] row, int offset, int[] langs, int count) {
+        for (int k = 0; k < count; ++k) {
+            int l = langs[k];
+            score[l] += row[offset + l];
+        }
+    }
+
+    /**
+     * {@code score[l] += row[offset + l]} for the first {@code count} languages {@code l} of {@code langs}
+     * @param score scores to update
+     * @param row matrix values
+     * @param offset offset of the row in the matrix values
+     * @param langs indexes of the languages to update
+     * @param count number of languages to update
+     */
+    public static void add(double[] score, float[] row, int offset, int[] langs, int count) {
+        for (int k = 0; k < count; ++k) {
+            int l = langs[k];
+            score[l] += row[offset + l];
+        }
+    }
+
+    /**
+     * Normalize probabilities so that they sum to 1 and return the maximum one
+     * @param prob probabilities
+     * @param length number of probabilities
+     * @return maximum of normalized probabilities
+     */
+    public static double normalize(double[] prob, int length) {
+        if (SCALAR_KERNELS || length < MIN_SPLIT_LENGTH) return normalizeScalar(prob, length);
+        if (VECTOR != null) return VECTOR.normalize(prob, length);
+
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += prob[i];
+            s1 += prob[i + 1];
+            s2 += prob[i + 2];
+            s3 += prob[i + 3];
+        }
+        for (; i < length; ++i) s0 += prob[i];
+        double scale = 1.0 / ((s0 + s1) + (s2 + s3));
+
+        double maxp = 0;
+        for (i = 0; i < length; ++i) {
+            double p = prob[i] * scale;
+            if (maxp < p) maxp = p;
+            prob[i] = p;
+        }
+        return maxp;
+    }
+
+    /**
+     * Reference scalar implementation of {@link #normalize(double[], int)}
+     * @param prob probabilities
+     * @param length number of probabilities
+     * @return maximum of normalized probabilities
+     */
+    public static double normalizeScalar(double[] prob, int length) {
+        double maxp = 0, sump = 0;
+        for(int i=0;i<length;++i) sump += prob[i];
+        for(int i=0;i<length;++i) {
+            double p = prob[i] / sump;
+            if (maxp < p) maxp = p;
+            prob[i] = p;
+        }
+        return maxp;
+    }
+
+    /**
+     * Normalize the probabilities of some languages so that they sum to 1 and return the maximum one.
+     * The probabilities of the other languages must be zero.
+     * @param prob probabilities
+     * @param langs indexes of the languages to normalize
+     * @param count number of languages to normalize
+     * @return maximum of normalized probabilities
+     */
+    public static double normalize(double[] prob, int[] langs, int count) {
+        double maxp = 0, sump = 0;
+        for (int k = 0; k < count; ++k) sump += prob[langs[k]];
+        double scale = 1.0 / sump;
+        for (int k = 0; k < count; ++k) {
+            int l = langs[k];
+            double p = prob[l] * scale;
+            if (maxp < p) maxp = p;
+            prob[l] = p;
+        }
+        return maxp;
+    }
+}
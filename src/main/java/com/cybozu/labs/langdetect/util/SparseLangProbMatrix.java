@@ -0,0 +1,195 @@
+package com.cybozu.labs.langdetect.util;
+
+import java.util.Arrays;
+
+/**
+ * {@link SparseLangProbMatrix} stores only the non-zero probabilities of each row
+ * as (language index, probability) pairs, in compressed sparse row layout.
+ * <p>
+ * Scoring methods only touch those pairs: the smoothing term shared by all languages
+ * is factored out, i.e. {@link #multiply(int, double, double[])} multiplies by
+ * {@code 1 + p / weight} and the log matrix holds {@code log(1 + p / weight)}.
+ * This keeps the cost per n-gram independent of the number of languages.
+ * Users don't use this class directly.
+ *
+ * @author Alexis Meneses
+ */
+public class SparseLangProbMatrix extends LangProbMatrix {
+    /** maximum number of languages (language indexes are stored as unsigned 16-bit values) */
+    public static final int MAX_LANGUAGES = 0x10000;
+
+    private final int[] rowStart;
+    private final short[] langIndex;
+    private final double[] doubles;
+    private final float[] floats;
+
+    /**
+     * Constructor for a double precision matrix.
+     * @param rowStart offset of the first pair of each row, followed by the total number of pairs
+     * @param langIndex language index of each pair
+     * @param values probability of each pair
+     * @param languages number of languages
+     */
+    public SparseLangProbMatrix(int[] rowStart, short[] langIndex, double[] values, int languages) {
+        this(rowStart, langIndex, values, null, languages);
+    }
+
+    /**
+     * Constructor for a single precision matrix.
+     * @param rowStart offset of the first pair of each row, followed by the total number of pairs
+     * @param langIndex language index of each pair
+     * @param values probability of each pair
+     * @param languages number of languages
+     */
+    public SparseLangProbMatrix(int[] rowStart, short[] langIndex, float[] values, int languages) {
+        this(rowStart, langIndex, null, values, languages);
+    }
+
+    private SparseLangProbMatrix(int[] rowStart, short[] langIndex, double[] doubles, float[] floats, int languages) {
+        super(rowStart.length - 1, languages);
+        int pairs = doubles != null ? doubles.length : floats.length;
+        if (languages <= 0 || languages > MAX_LANGUAGES) {
+            throw new IllegalArgumentException("Invalid number of languages: " + languages);
+        }
+        if (rowStart.length == 0 || rowStart[rowStart.length - 1] != pairs || langIndex.length != pairs) {
+            throw new IllegalArgumentException("Inconsistent sparse matrix arrays");
+        }
+        this.rowStart = rowStart;
+        this.langIndex = langIndex;
+        this.doubles = doubles;
+        this.floats = floats;
+    }
+
+    /**
+     * @return number of stored (language index, probability) pairs
+     */
+    public int pairs() {
+        return langIndex.length;
+    }
+
+    int[] rowStart() {
+        return rowStart;
+    }
+
+    short[] langIndex() {
+        return langIndex;
+    }
+
+    double[] doubles() {
+        return doubles;
+    }
+
+    float[] floats() {
+        return floats;
+    }
+
+    public boolean isFloat() {
+        return floats != null;
+    }
+
+    public double get(int row, int lang) {
+        for (int k = rowStart[row]; k < rowStart[row + 1]; ++k) {
+            if ((langIndex[k] & 0xffff) == lang) return doubles != null ? doubles[k] : floats[k];
+        }
+        return 0;
+    }
+
+    public void getRow(int row, double[] dest) {
+        Arrays.fill(dest, 0, languages, 0);
+        for (int k = rowStart[row]; k < rowStart[row + 1]; ++k) {
+            dest[langIndex[k] & 0xffff] = doubles != null ? doubles[k] : floats[k];
+        }
+    }
+
+    public void multiply(int row, double weight, double[] prob) {
+        double scale = 1.0 / weight;
+        int end = rowStart[row + 1];
+        for (int k = rowStart[row]; k < end; ++k) {
+            int lang = langIndex[k] & 0xffff;
+            if (lang >= prob.length) continue;
+            prob[lang] *= 1.0 + (doubles != null ? doubles[k] : floats[k]) * scale;
+        }
+    }
+
+    public void addTo(int row, double[] score) {
+        int end = rowStart[row + 1];
+        for (int k = rowStart[row]; k < end; ++k) {
+            int lang = langIndex[k] & 0xffff;
+            if (lang >= score.length) continue;
+            score[lang] += doubles != null ? doubles[k] : floats[k];
+        }
+    }
+
+    public void multiply(int row, double weight, double[] prob, int[] langs, int count) {
+        // pairs of the other languages multiply zero probabilities
+        multiply(row, weight, prob);
+    }
+
+    public void addTo(int row, double[] score, int[] langs, int count) {
+        addTo(row, score);
+    }
+
+    /**
+     * @return dense matrix with the same probabilities and precision
+     */
+    public DenseLangProbMatrix toDense() {
+        int size = rows * languages;
+        double[] newDoubles = doubles != null ? new double[size] : null;
+        float[] newFloats = floats != null ? new float[size] : null;
+        for (int row = 0; row < rows; ++row) {
+            int base = row * languages;
+            for (int k = rowStart[row]; k < rowStart[row + 1]; ++k) {
+                if (newDoubles != null) {
+                    newDoubles[base + (langIndex[k] & 0xffff)] = doubles[k];
+                } else {
+                    newFloats[base + (langIndex[k] & 0xffff)] = floats[k];
+                }
+            }
+        }
+        return newDoubles != null ? new DenseLangProbMatrix(newDoubles, languages) : new DenseLangProbMatrix(newFloats, languages);
+    }
+
+    public LangProbMatrix selectLanguages(int[] columns) {
+        int[] column = new int[languages];
+        Arrays.fill(column, -1);
+        for (int j = 0; j < columns.length; ++j) column[columns[j]] = j;
+
+        int[] newRowStart = new int[rows + 1];
+        for (int row = 0; row < rows; ++row) {
+            int pairs = 0;
+            for (int k = rowStart[row]; k < rowStart[row + 1]; ++k) {
+                if (column[langIndex[k] & 0xffff] >= 0) ++pairs;
+            }
+            newRowStart[row + 1] = newRowStart[row] + pairs;
+        }
+        int pairs = newRowStart[rows];
+        short[] newLangIndex = new short[pairs];
+        double[] newDoubles = doubles != null ? new double[pairs] : null;
+        float[] newFloats = floats != null ? new float[pairs] : null;
+        int n = 0;
+        for (int k = 0; k < langIndex.length; ++k) {
+            int j = column[langIndex[k] & 0xffff];
+            if (j < 0) continue;
+            newLangIndex[n] = (short) j;
+            if (newDoubles != null) {
+                newDoubles[n] = doubles[k];
+            } else {
+                newFloats[n] = floats[k];
+            }
+            ++n;
+        }
+        return new SparseLangProbMatrix(newRowStart, newLangIndex, newDoubles, newFloats, columns.length);
+    }
+
+    protected LangProbMatrix computeSmoothedLog(double weight) {
+        if (doubles != null) {
+            double[] values = new double[doubles.length];
+            for (int k = 0; k < values.length; ++k) values[k] = Math.log1p(doubles[k] / weight);
+            return new SparseLangProbMatrix(rowStart, langIndex, values, languages);
+        } else {
+            float[] values = new float[floats.length];
+            for (int k = 0; k < values.length; ++k) values[k] = (float) Math.log1p(floats[k] / weight);
+            return new SparseLangProbMatrix(rowStart, langIndex, values, languages);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.cybozu.labs.langdetect.util;
+
+/**
+ * {@link TextCleaner} prepares text for detection in a single pass:
+ * it replaces URLs and e-mail addresses with a space, composes Vietnamese diacritical marks
+ * (see {@link NGram#normalize_vi(String)}), collapses repeated spaces
+ * and counts Latin and non-Latin characters.
+ * <p>
+ * The output is identical to applying, in this order, the URL pattern
+ * {@code https?://[-_.?&~;+=/#0-9A-Za-z]{1,2076}}, the e-mail pattern
+ * {@code [-_.0-9A-Za-z]{1,64}@[-_0-9A-Za-z]{1,255}[-_.0-9A-Za-z]{1,255}},
+ * {@link NGram#normalize_vi(String)} and space collapsing.
+ * Users don't use this class directly.
+ *
+ * @author Alexis Meneses
+ */
+public class TextCleaner {
+    private static final int URL_MAX = 2076;
+    private static final int MAIL_LOCAL_MAX = 64;
+    private static final int MAIL_DOMAIN_MAX = 255;
+
+    private static final boolean[] URL_CHARS = charClass("-_.?&~;+=/#");
+    /** characters of an e-mail local part, also of the second part of its domain */
+    private static final boolean[] MAIL_CHARS = charClass("-_.");
+    /** characters of the first part of an e-mail domain */
+    private static final boolean[] DOMAIN_CHARS = charClass("-_");
+
+    private static final char DMARK_MIN = NGram.DMARK_CLASS.charAt(0);
+    private static final char DMARK_MAX = NGram.DMARK_CLASS.charAt(NGram.DMARK_CLASS.length() - 1);
+
+    private int latinCount = 0;
+    private int nonLatinCount = 0;
+
+    // state of the current append
+    private StringBuilder out;
+    private int maxLength;
+    private int count;
+    private char pre;
+
+    private static boolean[] charClass(String symbols) {
+        boolean[] table = new boolean[128];
+        for (char c = '0'; c <= '9'; ++c) table[c] = true;
+        for (char c = 'A'; c <= 'Z'; ++c) table[c] = true;
+        for (char c = 'a'; c <= 'z'; ++c) table[c] = true;
+        for (int i = 0; i < symbols.length(); ++i) table[symbols.charAt(i)] = true;
+        return table;
+    }
+
+    private static boolean is(boolean[] table, char c) {
+        return c < 128 && table[c];
+    }
+
+    /**
+     * Forget the characters counted so far
+     */
+    public void reset() {
+        latinCount = 0;
+        nonLatinCount = 0;
+    }
+
+    /**
+     * @return number of Latin letters ({@code A} to {@code z}) appended since the last reset
+     */
+    public int getLatinCount() {
+        return latinCount;
+    }
+
+    /**
+     * @return number of non-Latin characters (from U+0300, except Latin Extended Additional) appended since the last reset
+     */
+    public int getNonLatinCount() {
+        return nonLatinCount;
+    }
+
+    /**
+     * Forget the Latin letters counted so far, after they were removed from the text
+     */
+    public void clearLatinCount() {
+        latinCount = 0;
+    }
+
+    /**
+     * Clean a text and append it to a buffer
+     * @param text text to clean
+     * @param out buffer receiving the cleaned text
+     * @param maxLength maximum number of cleaned characters to consider, before collapsing spaces
+     * @param pre character preceding the text in the buffer (0 if none), for collapsing spaces
+     */
+    public void append(CharSequence text, StringBuilder out, int maxLength, char pre) {
+        this.out = out;
+        this.maxLength = maxLength;
+        this.count = 0;
+        this.pre = pre;
+        try {
+            clean(text);
+        } finally {
+            this.out = null;
+        }
+    }
+
+    private void clean(CharSequence text) {
+        int n = text.length();
+        int run = -1; // start of the pending run of e-mail characters, which may end with '@'
+        int i = 0;
+        while (i < n) {
+            char c = text.charAt(i);
+            if (c == 'h') {
+                int end = urlEnd(text, i, n);
+                if (end > 0) {
+                    if (run >= 0 && commit(text, run, i, n) < 0) return;
+                    run = -1;
+                    if (!emit(' ')) return;
+                    i = end;
+                    continue;
+                }
+            }
+            if (is(MAIL_CHARS, c)) {
+                if (run < 0) run = i;
+                if (i - run >= MAIL_LOCAL_MAX) {
+                    // too far from any '@' to be part of an e-mail address
+                    if (!emit(text.charAt(run++))) return;
+                }
+                ++i;
+                continue;
+            }
+            if (run >= 0) {
+                if (c == '@') {
+                    int end = mailEnd(text, i + 1, n);
+                    if (end > 0) {
+                        run = -1;
+                        if (!emit(' ')) return;
+                        i = end;
+                        continue;
+                    }
+                }
+                i = commit(text, run, i, n);
+                if (i < 0) return;
+                run = -1;
+                continue;
+            }
+            i = emitChar(text, i, n);
+            if (i < 0) return;
+        }
+        if (run >= 0) commit(text, run, n, n);
+    }
+
+    /**
+     * Emit the characters of a run
+     * @return index of the next character to read, or -1 if the maximum length is reached
+     */
+    private int commit(CharSequence text, int from, int to, int n) {
+        int i = from;
+        while (i < to) {
+            i = emitChar(text, i, n);
+            if (i < 0) return -1;
+        }
+        return i;
+    }
+
+    /**
+     * Emit a character, composed with the following diacritical mark if any
+     * @return index of the next character to read, or -1 if the maximum length is reached
+     */
+    private int emitChar(CharSequence text, int i, int n) {
+        char c = text.charAt(i++);
+        if (i < n) {
+            char mark = text.charAt(i);
+            if (mark >= DMARK_MIN && mark <= DMARK_MAX) {
+                int dmark = NGram.DMARK_CLASS.indexOf(mark);
+                int alphabet = dmark >= 0 ? NGram.TO_NORMALIZE_VI_CHARS.indexOf(c) : -1;
+                if (alphabet >= 0) {
+                    c = NGram.NORMALIZED_VI_CHARS[dmark].charAt(alphabet);
+                    ++i;
+                }
+            }
+        }
+        return emit(c) ? i : -1;
+    }
+
+    private boolean emit(char c) {
+        if (count >= maxLength) return false;
+        ++count;
+        if (c != ' ' || pre != ' ') {
+            out.append(c);
+            if (c <= 'z' && c >= 'A') {
+                ++latinCount;
+            } else if (c >= '\u0300' && (c < '\u1e00' || c > '\u1eff')) {
+                // not in Latin Extended Additional
+                ++nonLatinCount;
+            }
+        }
+        pre = c;
+        return true;
+    }
+
+    /**
+     * @return end of the URL starting at {@code i}, or -1 if there is none
+     */
+    private static int urlEnd(CharSequence text, int i, int n) {
+        if (i + 8 > n || text.charAt(i) != 'h' || text.charAt(i + 1) != 't'
+                || text.charAt(i + 2) != 't' || text.charAt(i + 3) != 'p') return -1;
+        int k = i + 4;
+        if (text.charAt(k) == 's') ++k;
+        if (k + 3 >= n || text.charAt(k) != ':' || text.charAt(k + 1) != '/' || text.charAt(k + 2) != '/') return -1;
+        k += 3;
+        int limit = Math.min(n, k + URL_MAX);
+        int end = k;
+        while (end < limit && is(URL_CHARS, text.charAt(end))) ++end;
+        return end > k ? end : -1;
+    }
+
+    /**
+     * @param j index following the '@'
+     * @return end of the e-mail domain starting at {@code j}, or -1 if there is none
+     */
+    private static int mailEnd(CharSequence text, int j, int n) {
+        int limit = j;
+        while (limit < n && is(MAIL_CHARS, text.charAt(limit))) ++limit;
+        // URLs are removed first, so one starting inside the domain cuts it
+        if (limit < n && text.charAt(limit) == ':') {
+            if (limit - 5 >= j && urlEnd(text, limit - 5, n) > 0) {
+                limit -= 5;
+            } else if (limit - 4 >= j && urlEnd(text, limit - 4, n) > 0) {
+                limit -= 4;
+            }
+        }
+        int first = 0;
+        while (j + first < limit && first < MAIL_DOMAIN_MAX && is(DOMAIN_CHARS, text.charAt(j + first))) ++first;
+        if (first == 0) return -1;
+        int second = Math.min(limit - (j + first), MAIL_DOMAIN_MAX);
+        if (second > 0) return j + first + second;
+        // the first part gives up its last character to the second one
+        return first >= 2 ? j + first : -1;
+    }
+}
@@ -0,0 +1,59 @@
+package com.cybozu.labs.langdetect.util;
+
+/**
+ * {@link VectorKernels} is the contract of the SIMD implementation of the contiguous
+ * {@link ScoringKernels}. Its only implementation, {@code VectorApiKernels}, uses the
+ * Java 16+ Vector API and is shipped in {@code META-INF/versions/N} of the multi-release jar,
+ * N being the Java version of the build.
+ * Each method must give the same results as the scalar loop it replaces:
+ * exactly for {@code multiply} and {@code add}, up to rounding for {@code normalize}.
+ *
+ * @author Alexis Meneses
+ */
+interface VectorKernels {
+    /**
+     * {@code prob[i] *= weight + row[offset + i]} for {@code i < length}
+     * @param prob probabilities to update
+     * @param row matrix values
+     * @param offset offset of the row in the matrix values
+     * @param length number of languages to update
+     * @param weight smoothing term
+     */
+    void multiply(double[] prob, double[] row, int offset, int length, double weight);
+
+    /**
+     * {@code prob[i] *= weight + row[offset + i]} for {@code i < length}
+     * @param prob probabilities to update
+     * @param row matrix values
+     * @param offset offset of the row in the matrix values
+     * @param length number of languages to update
+     * @param weight smoothing term
+     */
+    void multiply(double[] prob, float[] row, int offset, int length, double weight);
+
+    /**
+     * {@code score[i] += row[offset + i]} for {@code i < length}
+     * @param score scores to update
+     * @param row matrix values
+     * @param offset offset of the row in the matrix values
+     * @param length number of languages to update
+     */
+    void add(double[] score, double[] row, int offset, int length);
+
+    /**
+     * {@code score[i] += row[offset + i]} for {@code i < length}
+     * @param score scores to update
+     * @param row matrix values
+     * @param offset offset of the row in the matrix values
+     * @param length number of languages to update
+     */
+    void add(double[] score, float[] row, int offset, int length);
+
+    /**
+     * Normalize probabilities so that they sum to 1 and return the maximum one
+     * @param prob probabilities
+     * @param length number of probabilities
+     * @return maximum of normalized probabilities
+     */
+    double normalize(double[] prob, int length);
+}
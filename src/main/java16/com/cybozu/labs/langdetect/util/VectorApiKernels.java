@@ -0,0 +1,109 @@
+package com.cybozu.labs.langdetect.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link VectorApiKernels} implements the contiguous {@link ScoringKernels} with the Vector API.
+ * <p>
+ * This class is compiled for the Java version of the build (16 or later) into {@code META-INF/versions/N}
+ * of the multi-release jar, and needs the incubator module at runtime ({@code --add-modules jdk.incubator.vector}).
+ * {@link ScoringKernels} loads it by name and falls back to its scalar loops when it can't be loaded.
+ * The loops run on the preferred vector shape of the platform, and the remaining tail
+ * of each row is handled by the scalar code. Float rows are loaded with half-width float vectors
+ * of the same lane count, then widened to doubles.
+ *
+ * @author Alexis Meneses
+ */
+final class VectorApiKernels implements VectorKernels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS =
+            VectorSpecies.of(float.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    VectorApiKernels() {
+        if (DOUBLES.length() < 2 || FLOATS.length() != DOUBLES.length()) {
+            throw new UnsupportedOperationException("No usable vector shape: " + DOUBLES);
+        }
+    }
+
+    @Override
+    public void multiply(double[] prob, double[] row, int offset, int length, double weight) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(length); i < bound; i += DOUBLES.length()) {
+            DoubleVector r = DoubleVector.fromArray(DOUBLES, row, offset + i);
+            DoubleVector.fromArray(DOUBLES, prob, i).mul(r.add(weight)).intoArray(prob, i);
+        }
+        for (; i < length; ++i) {
+            prob[i] *= weight + row[offset + i];
+        }
+    }
+
+    @Override
+    public void multiply(double[] prob, float[] row, int offset, int length, double weight) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(length); i < bound; i += DOUBLES.length()) {
+            DoubleVector r = widen(row, offset + i);
+            DoubleVector.fromArray(DOUBLES, prob, i).mul(r.add(weight)).intoArray(prob, i);
+        }
+        for (; i < length; ++i) {
+            prob[i] *= weight + row[offset + i];
+        }
+    }
+
+    @Override
+    public void add(double[] score, double[] row, int offset, int length) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(length); i < bound; i += DOUBLES.length()) {
+            DoubleVector r = DoubleVector.fromArray(DOUBLES, row, offset + i);
+            DoubleVector.fromArray(DOUBLES, score, i).add(r).intoArray(score, i);
+        }
+        for (; i < length; ++i) {
+            score[i] += row[offset + i];
+        }
+    }
+
+    @Override
+    public void add(double[] score, float[] row, int offset, int length) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(length); i < bound; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, score, i).add(widen(row, offset + i)).intoArray(score, i);
+        }
+        for (; i < length; ++i) {
+            score[i] += row[offset + i];
+        }
+    }
+
+    @Override
+    public double normalize(double[] prob, int length) {
+        int bound = DOUBLES.loopBound(length);
+        DoubleVector sums = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (; i < bound; i += DOUBLES.length()) {
+            sums = sums.add(DoubleVector.fromArray(DOUBLES, prob, i));
+        }
+        double sump = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i) sump += prob[i];
+        double scale = 1.0 / sump;
+
+        DoubleVector maxs = DoubleVector.zero(DOUBLES);
+        for (i = 0; i < bound; i += DOUBLES.length()) {
+            DoubleVector p = DoubleVector.fromArray(DOUBLES, prob, i).mul(scale);
+            maxs = maxs.max(p);
+            p.intoArray(prob, i);
+        }
+        double maxp = maxs.reduceLanes(VectorOperators.MAX);
+        for (; i < length; ++i) {
+            double p = prob[i] * scale;
+            if (maxp < p) maxp = p;
+            prob[i] = p;
+        }
+        return maxp;
+    }
+
+    private static DoubleVector widen(float[] row, int offset) {
+        return (DoubleVector) FloatVector.fromArray(FLOATS, row, offset).convertShape(VectorOperators.F2D, DOUBLES, 0);
+    }
+}
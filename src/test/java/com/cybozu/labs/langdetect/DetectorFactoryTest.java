@@ -2,10 +2,23 @@ package com.cybozu.labs.langdetect;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.cybozu.labs.langdetect.util.DenseLangProbMatrix;
+import com.cybozu.labs.langdetect.util.LangProbMatrix;
+import com.cybozu.labs.langdetect.util.SparseLangProbMatrix;
+
 /**
  * Unit test for {@link DetectorFactory} profile loading.
  * @author Alexis Meneses
@@ -30,4 +43,182 @@ public class DetectorFactoryTest {
         assertTrue(detectorFactory.capacity > 0);
         assertEquals(detectorFactory.capacity, detectorFactory.langlist.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public final void testShortMessageProfiles() throws Exception {
+        detectorFactory.loadShortMessageProfiles();
+        assertEquals(detectorFactory.capacity, detectorFactory.langlist.size());
+        assertTrue(detectorFactory.getLangList().contains("en"));
+        Detector detector = detectorFactory.create();
+        detector.append("This is a short English message");
+        assertEquals(detector.detect(), "en");
+
+        // bundled profiles are added to already loaded ones
+        DetectorFactory factory = DetectorFactory.newInstance();
+        factory.loadProfile("{\"freq\":{\"A\":3},\"n_words\":[3,0,0],\"name\":\"xx\"}");
+        factory.loadDefaultProfiles();
+        assertEquals(factory.getLangList().get(0), "xx");
+        assertEquals(factory.capacity, factory.langlist.size());
+
+        // the compiled model and the profile list have the same language order
+        DetectorFactory compiled = DetectorFactory.newInstance();
+        compiled.loadDefaultProfiles();
+        List<String> langlist = factory.getLangList();
+        assertEquals(langlist.subList(1, langlist.size()), compiled.getLangList());
+
+        // the compiled model is stored sparse but loaded with the default dense layout
+        LangProbMatrix matrix = compiled.getModel().matrix;
+        assertTrue(matrix instanceof DenseLangProbMatrix);
+        assertFalse(matrix.isFloat());
+    }
+
+    @Test
+    public final void testLoadProfiles() throws Exception {
+        List<String> profiles = new ArrayList<String>();
+        for (int i = 0; i < 20; ++i) {
+            profiles.add("{\"freq\":{\"A\":" + (i + 1) + ",\"B" + i + "\":2,\"AB\":" + (20 - i) + "},"
+                    + "\"n_words\":[" + (i + 3) + ",40,0],\"name\":\"l" + i + "\"}");
+        }
+        detectorFactory.loadProfiles(profiles);
+        assertEquals(detectorFactory.capacity, detectorFactory.langlist.size());
+
+        DetectorFactory sequential = DetectorFactory.newInstance();
+        for (String json : profiles) sequential.loadProfile(json);
+        assertEquals(sequential.getLangList(), detectorFactory.getLangList());
+
+        DetectorModel expected = sequential.getModel();
+        DetectorModel actual = detectorFactory.getModel();
+        assertEquals(actual.getNGramCount(), expected.getNGramCount());
+        for (int id = 0; id < expected.getNGramCount(); ++id) {
+            assertEquals(actual.ids.keyOf(id), expected.ids.keyOf(id));
+            for (int lang = 0; lang < profiles.size(); ++lang) {
+                assertEquals(actual.matrix.get(id, lang), expected.matrix.get(id, lang), 0);
+            }
+        }
+
+        try {
+            detectorFactory.loadProfiles(profiles.subList(5, 6));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            sequential.loadProfiles(Arrays.asList("{\"freq\":{\"A\":3},\"n_words\":[3,0,0],\"name\":\"xx\"}", "{"));
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public final void testOptionsBeforeLoading() throws Exception {
+        detectorFactory.setSparseModel(true);
+        detectorFactory.setFloatPrecision(true);
+        detectorFactory.loadDefaultProfiles();
+        LangProbMatrix matrix = detectorFactory.getModel().matrix;
+        assertTrue(matrix instanceof SparseLangProbMatrix);
+        assertTrue(matrix.isFloat());
+
+        DetectorFactory dense = DetectorFactory.newInstance();
+        dense.setFrequencyOrder(true);
+        dense.loadShortMessageProfiles();
+        matrix = dense.getModel().matrix;
+        assertTrue(matrix instanceof DenseLangProbMatrix);
+        assertFalse(matrix.isFloat());
+        Detector detector = dense.create();
+        detector.append("This is a short English message");
+        assertEquals(detector.detect(), "en");
+    }
+
+    @Test
+    public final void testFloatPrecisionIsLossy() throws Exception {
+        detectorFactory.setFloatPrecision(true);
+        detectorFactory.loadShortMessageProfiles();
+        assertTrue(detectorFactory.getModel().matrix.isFloat());
+        try {
+            detectorFactory.setFloatPrecision(false);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // profiles added to a float model keep it in single precision
+        detectorFactory.loadProfile("{\"freq\":{\"A\":3},\"n_words\":[3,0,0],\"name\":\"xx\"}");
+        assertTrue(detectorFactory.getModel().matrix.isFloat());
+
+        // a float model can't be loaded back into double precision
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        detectorFactory.getModel().write(out);
+        DetectorFactory loaded = DetectorFactory.newInstance();
+        loaded.loadModel(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(loaded.getModel().matrix.isFloat());
+
+        detectorFactory.clear();
+        detectorFactory.setFloatPrecision(false);
+        detectorFactory.loadShortMessageProfiles();
+        assertFalse(detectorFactory.getModel().matrix.isFloat());
+    }
+
+    @Test
+    public final void testLoadModel() throws Exception {
+        detectorFactory.loadDefaultProfiles();
+        detectorFactory.setSparseModel(true);
+        DetectorModel model = detectorFactory.getModel();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.write(out);
+
+        DetectorFactory loaded = DetectorFactory.newInstance();
+        loaded.loadModel(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(loaded.getLangList(), detectorFactory.getLangList());
+        assertEquals(loaded.getModel().getNGramCount(), model.getNGramCount());
+
+        File file = File.createTempFile("langdetect", ".bin");
+        try {
+            FileOutputStream os = new FileOutputStream(file);
+            os.write(out.toByteArray());
+            os.close();
+            DetectorFactory mapped = DetectorFactory.newInstance();
+            mapped.setSparseModel(true);
+            mapped.loadModel(file);
+            assertTrue(mapped.getModel().matrix instanceof SparseLangProbMatrix);
+            assertEquals(mapped.getLangList(), detectorFactory.getLangList());
+            detectorFactory.setSeed(0);
+            mapped.setSeed(0);
+            String text = "Ceci est un texte en fran\u00e7ais pour tester le mod\u00e8le compil\u00e9.";
+            Detector expected = detectorFactory.create();
+            expected.append(text);
+            Detector actual = mapped.create();
+            actual.append(text);
+            assertEquals(actual.getProbabilities().toString(), expected.getProbabilities().toString());
+
+            // profiles can still be added to a loaded model
+            mapped.loadProfile("{\"freq\":{\"A\":3},\"n_words\":[3,0,0],\"name\":\"xx\"}");
+            assertEquals(mapped.getModel().getLangList().size(), detectorFactory.getLangList().size() + 1);
+        } finally {
+            file.delete();
+        }
+
+        try {
+            loaded.loadModel(new ByteArrayInputStream(out.toByteArray()));
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public final void testDetectionListener() throws Exception {
+        final List<Integer> counts = new ArrayList<Integer>();
+        detectorFactory.setDetectionListener(new DetectionListener() {
+            @Override
+            public void profilesLoaded(int profiles, long nanos) {
+                assertTrue(nanos > 0);
+                counts.add(profiles);
+            }
+        });
+        detectorFactory.loadDefaultProfiles();
+        detectorFactory.loadProfile("{\"freq\":{\"A\":3},\"n_words\":[3,0,0],\"name\":\"xx\"}");
+        detectorFactory.loadProfiles(Arrays.asList("{\"freq\":{\"A\":3},\"n_words\":[3,0,0],\"name\":\"x1\"}",
+                "{\"freq\":{\"B\":3},\"n_words\":[3,0,0],\"name\":\"x2\"}"));
+        assertEquals(counts, Arrays.asList(detectorFactory.getLangList().size() - 3, 1, 2));
+    }
+}
@@ -0,0 +1,166 @@
+package com.cybozu.labs.langdetect;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cybozu.labs.langdetect.util.LangProfile;
+
+/**
+ * Unit test for {@link DetectorPool} and {@link DetectorModel}.
+ * @author Alexis Meneses
+ *
+ */
+public class DetectorPoolTest {
+
+    private static final String TRAINING_EN = "a a a b b c c d e";
+    private static final String TRAINING_FR = "a b b c c c d d d";
+    private static final String TRAINING_JA = "\u3042 \u3042 \u3042 \u3044 \u3046 \u3048 \u3048";
+
+    private DetectorFactory detectorFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        detectorFactory = DetectorFactory.newInstance();
+        addProfile("en", TRAINING_EN);
+        addProfile("fr", TRAINING_FR);
+        addProfile("ja", TRAINING_JA);
+    }
+
+    private void addProfile(String lang, String training) {
+        LangProfile profile = new LangProfile(lang);
+        for (String w : training.split(" "))
+            profile.add(w);
+        detectorFactory.addProfile(profile);
+    }
+
+    @Test
+    public final void testPool() {
+        DetectorPool pool = detectorFactory.createPool();
+        assertEquals(pool.detect("a"), "en");
+        assertEquals(pool.detect("b d"), "fr");
+        assertEquals(pool.detect("d e"), "en");
+        assertEquals(pool.getProbabilities("\u3042\u3042\u3042\u3042a").get(0).getLanguage(), "ja");
+    }
+
+    @Test(expected = NoFeatureInTextException.class)
+    public final void testPoolNoFeature() {
+        detectorFactory.createPool().detect("1234");
+    }
+
+    @Test
+    public final void testModelSnapshot() {
+        DetectorModel model = detectorFactory.getModel();
+        assertSame(detectorFactory.getModel(), model);
+        DetectorPool pool = detectorFactory.createPool();
+
+        detectorFactory.clear();
+        addProfile("ko", "\uac00 \uac00");
+
+        assertEquals(model.getLangList().size(), 3);
+        assertEquals(pool.detect("b d"), "fr");
+        Detector detector = new Detector(model);
+        detector.append("a");
+        assertEquals(detector.detect(), "en");
+        assertNotSame(detectorFactory.getModel(), model);
+        assertEquals(detectorFactory.getModel().getLangList().size(), 1);
+    }
+
+    @Test
+    public final void testConcurrentDetection() throws Exception {
+        final DetectorPool pool = detectorFactory.createPool();
+        final AtomicInteger errors = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; ++t) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 200; ++i) {
+                        if (!pool.detect("b d").equals("fr") || !pool.detect("a").equals("en")) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (int i = 0; i < 50; ++i) {
+            detectorFactory.clear();
+            addProfile("en", TRAINING_JA);
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(errors.get(), 0);
+    }
+
+    @Test
+    public final void testDetectAll() throws Exception {
+        List<String> texts = new ArrayList<String>();
+        for (int i = 0; i < 1000; ++i) {
+            texts.add(i % 3 == 0 ? "a" : i % 3 == 1 ? "b d" : "1234");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<DetectionResult> results = detectorFactory.createPool().detectAll(texts, executor);
+            assertEquals(results.size(), texts.size());
+            for (int i = 0; i < results.size(); ++i) {
+                DetectionResult result = results.get(i);
+                if (i % 3 == 2) {
+                    assertFalse(result.isSuccess());
+                    assertTrue(result.getError() instanceof NoFeatureInTextException);
+                    assertEquals(result.getLanguage(), "unknown");
+                } else {
+                    assertTrue(result.isSuccess());
+                    assertEquals(result.getLanguage(), i % 3 == 0 ? "en" : "fr");
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public final void testFactoryDetectAll() throws Exception {
+        List<DetectionResult> results = detectorFactory.detectAll(new CharSequence[] { "d e", new StringBuilder("b d"), "" });
+        assertEquals(results.get(0).getLanguage(), "en");
+        assertEquals(results.get(1).getLanguage(), "fr");
+        assertFalse(results.get(2).isSuccess());
+        assertTrue(detectorFactory.detectAll(new ArrayList<String>()).isEmpty());
+        // an empty batch needs neither profiles nor threads
+        assertTrue(DetectorFactory.newInstance().detectAll(new ArrayList<String>()).isEmpty());
+
+        // the batch threads are kept for the next batches...
+        assertTrue(countBatchThreads() > 0);
+        results = detectorFactory.detectAll(new CharSequence[] { "a" });
+        assertEquals(results.get(0).getLanguage(), "en");
+
+        // ...and stopped on clear()
+        detectorFactory.clear();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("langdetect-batch")) thread.join(10000);
+        }
+        assertEquals(countBatchThreads(), 0);
+
+        // a new executor is started once profiles are loaded again
+        addProfile("en", TRAINING_EN);
+        addProfile("fr", TRAINING_FR);
+        results = detectorFactory.detectAll(new CharSequence[] { "b d" });
+        assertEquals(results.get(0).getLanguage(), "fr");
+        detectorFactory.clear();
+    }
+
+    private static int countBatchThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("langdetect-batch") && thread.isAlive()) ++count;
+        }
+        return count;
+    }
+}
@@ -3,14 +3,22 @@ package com.cybozu.labs.langdetect;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.cybozu.labs.langdetect.util.CharScript;
 import com.cybozu.labs.langdetect.util.LangProfile;
+import com.cybozu.labs.langdetect.util.NGram;
+import com.cybozu.labs.langdetect.util.SparseLangProbMatrix;
 
 /**
  * Unit test for {@link Detector} and {@link DetectorFactory}.
@@ -52,6 +60,41 @@ public class DetectorTest {
     public void tearDown() throws Exception {
     }
 
+    @Test
+    public final void testSubset() {
+        DetectorModel model = detectorFactory.getModel();
+        DetectorModel enFr = detectorFactory.getModel(Arrays.asList("fr", "en"));
+        DetectorModel ja = model.subset(Arrays.asList("ja"));
+        assertEquals(enFr.getLangList(), Arrays.asList("fr", "en"));
+        assertEquals(enFr.matrix.languages(), 2);
+        assertSame(enFr.ids, model.ids);
+        assertSame(ja.ids, model.ids);
+
+        Detector detect = new Detector(enFr);
+        detect.append("d e");
+        assertEquals(detect.detect(), "en");
+        detect = new Detector(enFr);
+        detect.append("b d");
+        assertEquals(detect.detect(), "fr");
+        detect = new Detector(ja);
+        detect.append("\u3042\u3042\u3042\u3042a");
+        assertEquals(detect.detect(), "ja");
+        assertEquals(detect.getProbabilities().size(), 1);
+
+        try {
+            model.subset(Arrays.asList("en", "de"));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            model.subset(Arrays.asList("en", "en"));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
     @Test
     public final void testDetector1() {
         Detector detect = detectorFactory.create();
@@ -107,4 +150,573 @@ public class DetectorTest {
         assertEquals(langList.get(0), "lang1");
         assertEquals(langList.get(1), "lang2");
     }
-}
\ No newline at end of file
+
+    @Test
+    public final void testFloatPrecision() {
+        detectorFactory.setFloatPrecision(true);
+        testDetector1();
+        testDetector2();
+        testDetector3();
+        testDetector4();
+        assertTrue(detectorFactory.getModel().matrix.isFloat());
+    }
+
+    @Test
+    public final void testSparseModel() {
+        detectorFactory.setSparseModel(true);
+        testDetector1();
+        testDetector2();
+        testDetector3();
+        testDetector4();
+        testDeterministic();
+        assertTrue(detectorFactory.getModel().matrix instanceof SparseLangProbMatrix);
+    }
+
+    @Test
+    public final void testFrequencyOrder() {
+        detectorFactory.setFrequencyOrder(true);
+        testDetector1();
+        testDetector2();
+        testDetector3();
+        testDetector4();
+        // "c" is the most frequent n-gram of the training profiles
+        assertEquals(detectorFactory.getModel().ids.get(NGram.encode("c")), 0);
+    }
+
+    @Test
+    public final void testAddProfileAfterCreate() {
+        testDetector1();
+        LangProfile profile_ko = new LangProfile("ko");
+        for (String w : "\uac00 \uac00 \uac00".split(" "))
+            profile_ko.add(w);
+        detectorFactory.addProfile(profile_ko);
+        testDetector2();
+        testDetector4();
+        Detector detect = detectorFactory.create();
+        detect.append("\uac01");
+        assertEquals(detect.detect(), "ko");
+    }
+
+    @Test
+    public final void testAdaptiveTrials() {
+        String[] texts = { "a", "b d", "d e", "\u3042\u3042\u3042\u3042a" };
+        String[] expected = { "en", "fr", "en", "ja" };
+        detectorFactory.setSeed(0);
+        for (int i = 0; i < texts.length; ++i) {
+            Detector detect = detectorFactory.create();
+            detect.setAdaptiveTrials(2, 7, 0.001);
+            detect.append(texts[i]);
+            assertEquals(detect.detect(), expected[i]);
+
+            // running every trial gives the fixed trial count result
+            Detector fixed = detectorFactory.create();
+            fixed.append(texts[i]);
+            Detector all = detectorFactory.create();
+            all.setAdaptiveTrials(7, 7, 0);
+            all.append(texts[i]);
+            List<LanguageProbability> fixedProbs = fixed.getProbabilities();
+            List<LanguageProbability> allProbs = all.getProbabilities();
+            assertEquals(allProbs.size(), fixedProbs.size());
+            for (int j = 0; j < fixedProbs.size(); ++j) {
+                assertEquals(allProbs.get(j).getLanguage(), fixedProbs.get(j).getLanguage());
+                assertEquals(allProbs.get(j).getProbability(), fixedProbs.get(j).getProbability(), 1e-12);
+            }
+        }
+
+        Detector detect = detectorFactory.create();
+        detect.setTrials(1);
+        detect.append("b d");
+        assertEquals(detect.detect(), "fr");
+        try {
+            detect.setTrials(0);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            detect.setAdaptiveTrials(3, 2, 0.01);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Reader returning one character per read, which is never ready
+     */
+    private static class SlowReader extends Reader {
+        private final String text;
+        private int pos = 0;
+
+        SlowReader(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (pos >= text.length()) return -1;
+            cbuf[off] = text.charAt(pos++);
+            return 1;
+        }
+
+        @Override
+        public boolean ready() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public final void testAppendReader() throws IOException {
+        String text = "d e  http://b.b.b/b  b@bbb.bb  d e";
+        detectorFactory.setSeed(0);
+        Detector expected = detectorFactory.create();
+        expected.append(text);
+        Detector detect = detectorFactory.create();
+        detect.append(new SlowReader(text));
+        assertEquals(detect.getProbabilities().toString(), expected.getProbabilities().toString());
+        assertEquals(detect.detect(), "en");
+    }
+
+    @Test
+    public final void testAppendCharSequence() {
+        String text = "d e http://b.c/ b d";
+        detectorFactory.setSeed(0);
+        Detector expected = detectorFactory.create();
+        expected.append(text);
+        String probabilities = expected.getProbabilities().toString();
+
+        Detector detect = detectorFactory.create();
+        detect.append(new StringBuilder(text));
+        assertEquals(detect.getProbabilities().toString(), probabilities);
+
+        char[] array = ("xx" + text + "yy").toCharArray();
+        detect = detectorFactory.create();
+        detect.append(array, 2, text.length());
+        assertEquals(detect.getProbabilities().toString(), probabilities);
+
+        CharBuffer buffer = CharBuffer.wrap("xx" + text);
+        buffer.position(2);
+        detect = detectorFactory.create();
+        detect.append(buffer);
+        assertEquals(buffer.position(), 2);
+        assertEquals(detect.getProbabilities().toString(), probabilities);
+
+        CharBuffer direct = ByteBuffer.allocateDirect(text.length() * 2).asCharBuffer();
+        direct.put(text).flip();
+        detect = detectorFactory.create();
+        detect.append(direct);
+        assertEquals(detect.getProbabilities().toString(), probabilities);
+
+        DetectorPool pool = new DetectorPool(detectorFactory.create());
+        assertEquals(pool.detect(array, 2, text.length()), expected.detect());
+    }
+
+    @Test
+    public final void testAppendUtf8() throws IOException {
+        String text = "d e \u3042\u3042 b@c.de \u00e9";
+        byte[] bytes = ("xx" + text).getBytes("UTF-8");
+        detectorFactory.setSeed(0);
+        Detector expected = detectorFactory.create();
+        expected.append(text);
+        String probabilities = expected.getProbabilities().toString();
+
+        Detector detect = detectorFactory.create();
+        detect.append(bytes, 2, bytes.length - 2);
+        assertEquals(detect.getProbabilities().toString(), probabilities);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        direct.position(2);
+        detect = detectorFactory.create();
+        detect.append(direct);
+        assertEquals(direct.position(), 2);
+        assertEquals(detect.getProbabilities().toString(), probabilities);
+
+        // malformed input
+        detect = detectorFactory.create();
+        detect.append(new byte[] { 'd', ' ', (byte) 0xff, (byte) 0xc3, ' ', 'e' }, 0, 6);
+        assertEquals(detect.detect(), "en");
+
+        // only the beginning of a long input is used
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 100000; ++i) longText.append("b d ");
+        detect = detectorFactory.create();
+        detect.setMaxTextLength(100);
+        byte[] longBytes = longText.toString().getBytes("UTF-8");
+        detect.append(longBytes, 0, longBytes.length);
+        assertEquals(detect.detect(), "fr");
+    }
+
+    @Test
+    public final void testAppendMaxTextLength() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) text.append("b d ");
+        detectorFactory.setSeed(0);
+        Detector expected = detectorFactory.create();
+        expected.setMaxTextLength(20);
+        expected.append(text.toString());
+        String probabilities = expected.getProbabilities().toString();
+
+        // no more characters are read than the target text can take
+        final int[] read = new int[1];
+        Reader reader = new StringReader(text.toString()) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                int n = super.read(cbuf, off, len);
+                if (n > 0) read[0] += n;
+                return n;
+            }
+        };
+        Detector detect = detectorFactory.create();
+        detect.setMaxTextLength(20);
+        detect.append(reader);
+        assertEquals(read[0], 20);
+        assertEquals(detect.getProbabilities().toString(), probabilities);
+
+        byte[] bytes = text.toString().getBytes("UTF-8");
+        detect = detectorFactory.create();
+        detect.setMaxTextLength(20);
+        detect.append(bytes, 0, bytes.length);
+        assertEquals(detect.getProbabilities().toString(), probabilities);
+
+        // a surrogate pair is decoded (instead of looping forever) when a single character is missing
+        detect = detectorFactory.create();
+        detect.setMaxTextLength(1);
+        bytes = "\uD840\uDC0B b".getBytes("UTF-8");
+        detect.append(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public final void testStreamConfidence() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) text.append("b d ");
+        SlowReader reader = new SlowReader(text.toString());
+        Detector detect = detectorFactory.create();
+        detect.setStreamConfidence(0.99);
+        detect.append(reader);
+        assertTrue(reader.pos < text.length());
+        assertEquals(detect.detect(), "fr");
+
+        reader = new SlowReader(text.toString());
+        detect = detectorFactory.create();
+        detect.append(reader);
+        assertEquals(reader.pos, text.length());
+
+        try {
+            detect.setStreamConfidence(1.5);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public final void testStreamConfidenceNGrams() throws IOException {
+        // the n-grams scored while streaming are reused by the detection, which must not change its result
+        String[] texts = { "a b c d e ", "b d e a c c ", "ああ a いう b あえ " };
+        for (String text : texts) {
+            Detector streamed = detectorFactory.create();
+            streamed.setDeterministic(true);
+            streamed.setStreamConfidence(0.5);
+            streamed.append(new StringReader(text));
+            streamed.append("d e");
+
+            Detector appended = detectorFactory.create();
+            appended.setDeterministic(true);
+            appended.append(text);
+            appended.append("d e");
+            assertEquals(streamed.getProbabilities().toString(), appended.getProbabilities().toString());
+        }
+    }
+
+    @Test
+    public final void testDeterministic() {
+        String[] texts = { "a", "b d", "d e", "\u3042\u3042\u3042\u3042a" };
+        String[] expected = { "en", "fr", "en", "ja" };
+        for (int i = 0; i < texts.length; ++i) {
+            Detector detect = detectorFactory.create();
+            detect.setDeterministic(true);
+            detect.append(texts[i]);
+            assertEquals(detect.detect(), expected[i]);
+
+            Detector detect2 = detectorFactory.create();
+            detect2.setDeterministic(true);
+            detect2.append(texts[i]);
+            assertEquals(detect2.getProbabilities().toString(), detect.getProbabilities().toString());
+        }
+    }
+
+    @Test
+    public final void testReset() {
+        Detector detect = detectorFactory.create();
+        detect.setDeterministic(true);
+        detect.append("a");
+        assertEquals(detect.detect(), "en");
+        detect.reset();
+        detect.append("b d");
+        assertEquals(detect.detect(), "fr");
+        detect.reset();
+        detect.append("\u3042\u3042\u3042\u3042a");
+        assertEquals(detect.detect(), "ja");
+        detect.reset();
+        detect.append("d e");
+        assertEquals(detect.detect(), "en");
+    }
+
+    @Test
+    public final void testResetWithSeed() {
+        detectorFactory.setSeed(1);
+        Detector detect = detectorFactory.create();
+        detect.append("b d e");
+        String first = detect.getProbabilities().toString();
+        detect.reset();
+        detect.append("a");
+        detect.detect();
+        detect.reset();
+        detect.append("b d e");
+        assertEquals(detect.getProbabilities().toString(), first);
+    }
+
+    @Test
+    public final void testCache() {
+        detectorFactory.setSeed(0);
+        detectorFactory.setCacheSize(2);
+        DetectionCache cache = detectorFactory.getCache();
+
+        Detector detect = detectorFactory.create();
+        detect.append("b d");
+        String expected = detect.getProbabilities().toString();
+        assertEquals(cache.getMissCount(), 1);
+        detect = detectorFactory.create();
+        detect.append("b d");
+        assertEquals(detect.getProbabilities().toString(), expected);
+        assertEquals(cache.getHitCount(), 1);
+        assertEquals(cache.getHitRatio(), 0.5, 0);
+
+        // parameters are part of the key
+        detect = detectorFactory.create(0.1);
+        detect.append("b d");
+        detect.detect();
+        assertEquals(cache.getMissCount(), 2);
+
+        // least recently used results are evicted
+        detect = detectorFactory.create();
+        detect.append("d e");
+        assertEquals(detect.detect(), "en");
+        assertEquals(cache.size(), 2);
+        detect = detectorFactory.create();
+        detect.append("b d");
+        detect.detect();
+        assertEquals(cache.getMissCount(), 4);
+
+        // loading profiles invalidates the cache
+        detectorFactory.addProfile(new LangProfile("xx"));
+        assertEquals(cache.size(), 0);
+        detect = detectorFactory.create();
+        detect.append("d e");
+        assertEquals(detect.getProbabilities().size(), 1);
+        assertEquals(cache.getMissCount(), 5);
+
+        detectorFactory.setCacheSize(0);
+        assertNull(detectorFactory.getCache());
+    }
+
+    @Test
+    public final void testCacheAcrossModels() {
+        detectorFactory.setSeed(0);
+        detectorFactory.setCacheSize(10);
+        DetectionCache cache = detectorFactory.getCache();
+
+        // changing the seed doesn't invalidate the results of the other seed
+        DetectorPool pool = detectorFactory.createPool();
+        pool.detect("b d");
+        detectorFactory.setSeed(1);
+        Detector detect = detectorFactory.create();
+        detect.append("b d");
+        detect.detect();
+        assertEquals(cache.getMissCount(), 2);
+        assertEquals(cache.size(), 2);
+        pool.detect("b d");
+        detect = detectorFactory.create();
+        detect.append("b d");
+        detect.detect();
+        assertEquals(cache.getHitCount(), 2);
+
+        // results of a stale model are dropped without removing those of the current model
+        detectorFactory.addProfile(new LangProfile("xx"));
+        detect = detectorFactory.create();
+        detect.append("b d");
+        detect.detect();
+        assertEquals(cache.size(), 1);
+        pool.detect("d e");
+        pool.detect("d e");
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getHitCount(), 2);
+        // nor counted as misses
+        assertEquals(cache.getMissCount(), 3);
+        detect = detectorFactory.create();
+        detect.append("b d");
+        detect.detect();
+        assertEquals(cache.getHitCount(), 3);
+    }
+
+    @Test
+    public final void testSegmentedCache() {
+        detectorFactory.setCacheSize(256);
+        DetectionCache cache = detectorFactory.getCache();
+        DetectorModel model = detectorFactory.getModel();
+        double[] prob = new double[model.getLangList().size()];
+        for (int i = 0; i < 1000; ++i) {
+            cache.put(model, "text " + i, prob);
+            assertSame(cache.get(model, "text " + i), prob);
+        }
+        // every segment is full, and none holds more than its share
+        assertEquals(cache.size(), 256);
+        assertEquals(cache.getHitCount(), 1000);
+        cache.clear();
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public final void testShortText() {
+        Detector exact = detectorFactory.create();
+        exact.setDeterministic(true);
+        exact.append("b d");
+        String expected = exact.getProbabilities().toString();
+
+        // each distinct n-gram is scored once, whatever the seed
+        for (long seed = 0; seed < 3; ++seed) {
+            detectorFactory.setSeed(seed);
+            Detector detect = detectorFactory.create();
+            detect.setShortTextThreshold(10);
+            detect.append("b b b d");
+            assertEquals(detect.getProbabilities().toString(), expected);
+        }
+
+        // longer texts still use random sampling
+        Detector detect = detectorFactory.create();
+        detect.setShortTextThreshold(3);
+        detect.append("b b b d");
+        assertEquals(detect.detect(), "fr");
+        assertFalse(detect.getProbabilities().toString().equals(expected));
+    }
+
+    @Test
+    public final void testScriptFilter() {
+        boolean[][] scriptLanguages = detectorFactory.getModel().scriptLanguages();
+        assertTrue(scriptLanguages[CharScript.of('a')][0]);
+        assertFalse(scriptLanguages[CharScript.of('a')][2]);
+        assertTrue(scriptLanguages[CharScript.of('\u3042')][2]);
+
+        // Latin letters are removed from the text, leaving Hiragana only
+        Detector detect = detectorFactory.create();
+        detect.setScriptFilter(true);
+        detect.append("\u3042\u3042\u3042 a");
+        List<LanguageProbability> probabilities = detect.getProbabilities();
+        assertEquals(probabilities.size(), 1);
+        assertEquals(probabilities.get(0).getLanguage(), "ja");
+        assertEquals(probabilities.get(0).getProbability(), 1.0, 1e-10);
+
+        detect = detectorFactory.create();
+        detect.setScriptFilter(true);
+        detect.setDeterministic(true);
+        detect.append("b d");
+        probabilities = detect.getProbabilities();
+        assertEquals(probabilities.get(0).getLanguage(), "fr");
+        assertEquals(probabilities.get(0).getProbability() + probabilities.get(1).getProbability(), 1.0, 1e-10);
+
+        // no language uses both scripts
+        detect = detectorFactory.create();
+        detect.setScriptFilter(true);
+        detect.setDeterministic(true);
+        detect.append("\u3042\u3042 a a");
+        assertTrue(detect.getProbabilities().size() > 1);
+    }
+
+    @Test
+    public final void testPruning() {
+        String text = "b d b d c a b b d d a c c";
+        for (long seed = 0; seed < 5; ++seed) {
+            detectorFactory.setSeed(seed);
+            Detector expected = detectorFactory.create();
+            expected.append(text);
+            Detector detect = detectorFactory.create();
+            detect.setPruningThreshold(1e-10);
+            detect.append(text);
+            List<LanguageProbability> probabilities = detect.getProbabilities();
+            List<LanguageProbability> expectedProbabilities = expected.getProbabilities();
+            assertEquals(probabilities.size(), expectedProbabilities.size());
+            for (int i = 0; i < probabilities.size(); ++i) {
+                assertEquals(probabilities.get(i).getLanguage(), expectedProbabilities.get(i).getLanguage());
+                assertEquals(probabilities.get(i).getProbability(), expectedProbabilities.get(i).getProbability(), 1e-8);
+            }
+        }
+
+        // hopeless languages are dropped, Japanese first
+        Detector detect = detectorFactory.create();
+        detect.setPruningThreshold(0.2);
+        detect.append(text);
+        assertEquals(detect.detect(), "fr");
+
+        try {
+            detect.setPruningThreshold(1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public final void testDetectionListener() {
+        final List<DetectionMetrics> metrics = new ArrayList<DetectionMetrics>();
+        detectorFactory.setDetectionListener(new DetectionListener() {
+            @Override
+            public void detected(DetectionMetrics m) {
+                metrics.add(m);
+            }
+        });
+        detectorFactory.setCacheSize(10);
+
+        Detector detect = detectorFactory.create();
+        detect.setMaxTextLength(5);
+        detect.append("b d b d b d");
+        assertEquals(detect.detect(), "fr");
+        detect.getProbabilities();
+        assertEquals(metrics.size(), 1);
+        DetectionMetrics m = metrics.get(0);
+        assertEquals(m.getTextLength(), 5);
+        assertEquals(m.getExtractedLength(), 5);
+        assertEquals(m.getNGramCount(), 3);
+        assertEquals(m.getNGramsPerCharacter(), 0.6, 1e-12);
+        assertEquals(m.getTrials(), 7);
+        assertTrue(m.getIterations() >= 7);
+        assertFalse(m.isCached());
+        assertTrue(m.getCleaningNanos() >= 0 && m.getExtractionNanos() >= 0);
+        assertTrue(m.getScoringNanos() > 0 && m.getSortingNanos() >= 0);
+
+        detect = detectorFactory.create();
+        detect.setMaxTextLength(5);
+        detect.append("b d b");
+        detect.detect();
+        assertTrue(metrics.get(1).isCached());
+        assertEquals(metrics.get(1).getTrials(), 0);
+
+        detect = detectorFactory.create();
+        detect.setDeterministic(true);
+        detect.append("\u3042\u3042\u3042 a");
+        detect.detect();
+        assertEquals(metrics.get(2).getTextLength(), 5);
+        assertEquals(metrics.get(2).getExtractedLength(), 4);
+        assertEquals(metrics.get(2).getTrials(), 0);
+
+        // no listener
+        detect = new Detector(detectorFactory.getModel());
+        detect.append("b d");
+        detect.detect();
+        assertEquals(metrics.size(), 3);
+    }
+}
@@ -0,0 +1,201 @@
+package com.cybozu.labs.langdetect.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link BinaryModel}.
+ * @author Alexis Meneses
+ *
+ */
+public class BinaryModelTest {
+
+    private static final List<String> LANGS = Arrays.asList("en", "fr", "\u65e5\u672c");
+    private static final String[] NGRAMS = { "a", "b c", "\u3042\u3044" };
+
+    private static NGramTable table() {
+        NGramTable ids = new NGramTable();
+        for (String ngram : NGRAMS) ids.put(NGram.encode(ngram));
+        return ids;
+    }
+
+    private static BinaryModel roundTrip(NGramTable ids, LangProbMatrix matrix) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryModel.write(out, LANGS, ids, matrix);
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        BinaryModel model = BinaryModel.read(buffer);
+        assertFalse(buffer.hasRemaining());
+        return model;
+    }
+
+    private static void assertSameModel(BinaryModel model, NGramTable ids, LangProbMatrix matrix) {
+        assertEquals(model.getLangList(), LANGS);
+        assertEquals(model.getIds().size(), ids.size());
+        for (String ngram : NGRAMS) {
+            long key = NGram.encode(ngram);
+            assertEquals(model.getIds().get(key), ids.get(key));
+        }
+        assertEquals(model.getMatrix().getClass(), matrix.getClass());
+        assertEquals(model.getMatrix().isFloat(), matrix.isFloat());
+        for (int row = 0; row < matrix.rows(); ++row) {
+            for (int lang = 0; lang < matrix.languages(); ++lang) {
+                assertEquals(model.getMatrix().get(row, lang), matrix.get(row, lang), 0);
+            }
+        }
+    }
+
+    @Test
+    public final void testDense() throws IOException {
+        NGramTable ids = table();
+        LangProbMatrix doubles = new DenseLangProbMatrix(new double[] { 0.1, 0, 0.2, 0, 0.3, 0, 0.4, 0.5, 0.6 }, 3);
+        assertSameModel(roundTrip(ids, doubles), ids, doubles);
+        LangProbMatrix floats = new DenseLangProbMatrix(new float[] { 0.1f, 0, 0.2f, 0, 0.3f, 0, 0.4f, 0.5f, 0.6f }, 3);
+        assertSameModel(roundTrip(ids, floats), ids, floats);
+    }
+
+    @Test
+    public final void testSparse() throws IOException {
+        NGramTable ids = table();
+        int[] rowStart = { 0, 2, 3, 6 };
+        short[] langIndex = { 0, 2, 1, 0, 1, 2 };
+        LangProbMatrix doubles = new SparseLangProbMatrix(rowStart, langIndex, new double[] { 0.1, 0.2, 0.3, 0.4, 0.5, 0.6 }, 3);
+        assertSameModel(roundTrip(ids, doubles), ids, doubles);
+        LangProbMatrix floats = new SparseLangProbMatrix(rowStart, langIndex, new float[] { 0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f }, 3);
+        assertSameModel(roundTrip(ids, floats), ids, floats);
+    }
+
+    /**
+     * Stream returning at most 1000 bytes per read
+     */
+    private static InputStream slowStream(byte[] bytes) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+    }
+
+    @Test
+    public final void testStream() throws IOException {
+        // large enough to refill the stream buffer several times
+        NGramTable ids = new NGramTable();
+        for (int i = 0; i < 20000; ++i) ids.put(NGram.encode(String.valueOf((char) (0x4e00 + i))));
+        int rows = ids.size();
+        double[] doubles = new double[rows * LANGS.size()];
+        float[] floats = new float[doubles.length];
+        for (int i = 0; i < doubles.length; ++i) floats[i] = (float) (doubles[i] = i / (double) doubles.length);
+        int[] rowStart = new int[rows + 1];
+        short[] langIndex = new short[rows];
+        for (int row = 0; row < rows; ++row) {
+            rowStart[row + 1] = row + 1;
+            langIndex[row] = (short) (row % LANGS.size());
+        }
+        LangProbMatrix[] matrices = {
+            new DenseLangProbMatrix(doubles, LANGS.size()),
+            new DenseLangProbMatrix(floats, LANGS.size()),
+            new SparseLangProbMatrix(rowStart, langIndex, Arrays.copyOf(doubles, rows), LANGS.size()),
+            new SparseLangProbMatrix(rowStart, langIndex, Arrays.copyOf(floats, rows), LANGS.size()),
+        };
+        for (LangProbMatrix matrix : matrices) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BinaryModel.write(out, LANGS, ids, matrix);
+            BinaryModel model = BinaryModel.read(slowStream(out.toByteArray()));
+            assertEquals(model.getLangList(), LANGS);
+            assertEquals(model.getIds().size(), rows);
+            for (int id = 0; id < rows; ++id) assertEquals(model.getIds().keyOf(id), ids.keyOf(id));
+            for (int row = 0; row < rows; ++row) {
+                for (int lang = 0; lang < LANGS.size(); ++lang) {
+                    assertEquals(model.getMatrix().get(row, lang), matrix.get(row, lang), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public final void testFormatError() throws IOException {
+        try {
+            BinaryModel.read(ByteBuffer.wrap("{\"freq\":{}}".getBytes("UTF-8")));
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryModel.write(out, LANGS, table(), new DenseLangProbMatrix(new double[9], 3));
+        byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() - 1);
+        try {
+            BinaryModel.read(ByteBuffer.wrap(truncated));
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            BinaryModel.read(slowStream(truncated));
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // corrupt counts in the header are rejected without allocating for them
+        byte[] model = out.toByteArray();
+        int rowsOffset = 16;
+        for (String lang : LANGS) rowsOffset += 4 + lang.getBytes("UTF-8").length;
+        for (int offset : new int[] { 12, rowsOffset }) {
+            for (int count : new int[] { Integer.MAX_VALUE, -1, 0x55555556 }) {
+                byte[] corrupt = model.clone();
+                ByteBuffer.wrap(corrupt).putInt(offset, count);
+                try {
+                    BinaryModel.read(ByteBuffer.wrap(corrupt));
+                    fail("IOException expected");
+                } catch (IOException e) {
+                    // expected
+                }
+                try {
+                    BinaryModel.read(slowStream(corrupt));
+                    fail("IOException expected");
+                } catch (IOException e) {
+                    // expected
+                }
+            }
+        }
+
+        // sparse language indexes are 16-bit
+        String[] names = new String[SparseLangProbMatrix.MAX_LANGUAGES + 1];
+        for (int i = 0; i < names.length; ++i) names[i] = String.valueOf(i);
+        out = new ByteArrayOutputStream();
+        BinaryModel.write(out, Arrays.asList(names), new NGramTable(), new DenseLangProbMatrix(new double[0], names.length));
+        out.write(new byte[4]);     // row offsets of an empty sparse matrix
+        byte[] sparse = out.toByteArray();
+        sparse[11] |= 2;
+        try {
+            BinaryModel.read(ByteBuffer.wrap(sparse));
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals(e.getMessage(), "Too many languages for a sparse model: " + names.length);
+        }
+
+        // corrupt sparse matrices are rejected when loaded, not when detecting
+        int[][] rowStarts = { { 0, 2, 1, 3 }, { 1, 2, 3, 3 }, { 0, 1, 2, 3 } };
+        short[][] langIndexes = { { 0, 1, 2 }, { 0, 1, 2 }, { 0, 3, 2 } };
+        for (int i = 0; i < rowStarts.length; ++i) {
+            out = new ByteArrayOutputStream();
+            BinaryModel.write(out, LANGS, table(), new SparseLangProbMatrix(rowStarts[i], langIndexes[i], new double[3], 3));
+            try {
+                BinaryModel.read(ByteBuffer.wrap(out.toByteArray()));
+                fail("IOException expected");
+            } catch (IOException e) {
+                assertEquals(e.getMessage(), "Language model format error");
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.cybozu.labs.langdetect.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link CharScript}.
+ * @author Alexis Meneses
+ *
+ */
+public class CharScriptTest {
+
+    @Test
+    public final void testOf() {
+        assertEquals(CharScript.of(' '), CharScript.NONE);
+        assertEquals(CharScript.of('1'), CharScript.NONE);
+        assertTrue(CharScript.of('a') != CharScript.NONE);
+        assertTrue(CharScript.of('a') < CharScript.count());
+
+        // blocks of the same script are merged
+        assertEquals(CharScript.of('\u00e9'), CharScript.of('a'));
+        assertEquals(CharScript.of('\u1ec3'), CharScript.of('a'));
+        assertEquals(CharScript.of('\u1100'), CharScript.of('\uac00'));
+        assertEquals(CharScript.of('\u3400'), CharScript.of('\u4e00'));
+
+        assertTrue(CharScript.of('\u03b1') != CharScript.of('a'));
+        assertTrue(CharScript.of('\u0430') != CharScript.of('\u03b1'));
+        assertTrue(CharScript.of('\u3042') != CharScript.of('\u30a2'));
+        assertTrue(CharScript.of('\u0915') != CharScript.of('\u0e01'));
+    }
+}
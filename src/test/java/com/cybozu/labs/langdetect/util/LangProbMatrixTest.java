@@ -0,0 +1,167 @@
+package com.cybozu.labs.langdetect.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link DenseLangProbMatrix} and {@link SparseLangProbMatrix}.
+ * @author Alexis Meneses
+ *
+ */
+public class LangProbMatrixTest {
+
+    private static final double[] VALUES = { 0.1, 0.0, 0.3, 0.0, 0.0, 0.6 };
+    private static final int[] ROW_START = { 0, 2, 3 };
+    private static final short[] LANG_INDEX = { 0, 2, 2 };
+    private static final double[] PAIRS = { 0.1, 0.3, 0.6 };
+
+    /**
+     * Test method for {@link LangProbMatrix#get(int, int)}
+     */
+    @Test
+    public final void testGet() {
+        LangProbMatrix matrix = new DenseLangProbMatrix(VALUES, 3);
+        assertEquals(matrix.rows(), 2);
+        assertEquals(matrix.languages(), 3);
+        assertFalse(matrix.isFloat());
+        assertEquals(matrix.get(0, 2), 0.3, 0);
+        assertEquals(matrix.get(1, 2), 0.6, 0);
+
+        LangProbMatrix floats = new DenseLangProbMatrix(new float[] { 0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f }, 2);
+        assertEquals(floats.rows(), 3);
+        assertTrue(floats.isFloat());
+        assertEquals(floats.get(2, 1), 0.6, 1e-7);
+
+        LangProbMatrix sparse = new SparseLangProbMatrix(ROW_START, LANG_INDEX, PAIRS, 3);
+        assertEquals(sparse.rows(), 2);
+        assertEquals(sparse.languages(), 3);
+        for (int row = 0; row < 2; ++row) {
+            double[] dense = new double[3];
+            double[] fromSparse = new double[3];
+            matrix.getRow(row, dense);
+            sparse.getRow(row, fromSparse);
+            for (int lang = 0; lang < 3; ++lang) {
+                assertEquals(sparse.get(row, lang), matrix.get(row, lang), 0);
+                assertEquals(fromSparse[lang], dense[lang], 0);
+            }
+        }
+    }
+
+    /**
+     * Test method for {@link LangProbMatrix#multiply(int, double, double[])}
+     */
+    @Test
+    public final void testMultiply() {
+        LangProbMatrix matrix = new DenseLangProbMatrix(new double[] { 0.1, 0.2, 0.3, 0.4 }, 2);
+        double[] prob = { 1.0, 2.0 };
+        matrix.multiply(1, 0.5, prob);
+        assertEquals(prob[0], 0.8, 1e-12);
+        assertEquals(prob[1], 1.8, 1e-12);
+
+        LangProbMatrix floats = new DenseLangProbMatrix(new float[] { 0.1f, 0.2f, 0.3f, 0.4f }, 2);
+        double[] fprob = { 1.0, 2.0 };
+        floats.multiply(1, 0.5, fprob);
+        assertEquals(fprob[0], 0.8, 1e-6);
+        assertEquals(fprob[1], 1.8, 1e-6);
+    }
+
+    /**
+     * Test that sparse scoring matches dense scoring up to a common factor (or term in log space)
+     */
+    @Test
+    public final void testSparseScoring() {
+        LangProbMatrix dense = new DenseLangProbMatrix(VALUES, 3);
+        LangProbMatrix sparse = new SparseLangProbMatrix(ROW_START, LANG_INDEX, PAIRS, 3);
+        double weight = 0.05;
+
+        double[] denseProb = { 0.2, 0.3, 0.5 };
+        double[] sparseProb = { 0.2, 0.3, 0.5 };
+        for (int row : new int[] { 0, 1, 1, 0 }) {
+            dense.multiply(row, weight, denseProb);
+            sparse.multiply(row, weight, sparseProb);
+        }
+        for (int i = 1; i < 3; ++i) {
+            assertEquals(sparseProb[i] / sparseProb[0], denseProb[i] / denseProb[0], 1e-9);
+        }
+
+        double[] denseScore = new double[3];
+        double[] sparseScore = new double[3];
+        for (int row : new int[] { 0, 1, 1, 0 }) {
+            dense.smoothedLog(weight).addTo(row, denseScore);
+            sparse.smoothedLog(weight).addTo(row, sparseScore);
+        }
+        for (int i = 1; i < 3; ++i) {
+            assertEquals(sparseScore[i] - sparseScore[0], denseScore[i] - denseScore[0], 1e-9);
+        }
+        assertSame(sparse.smoothedLog(weight), sparse.smoothedLog(weight));
+
+        // alternating smoothing terms reuse their log matrices
+        LangProbMatrix log = dense.smoothedLog(weight);
+        LangProbMatrix other = dense.smoothedLog(weight * 2);
+        assertNotSame(other, log);
+        assertSame(dense.smoothedLog(weight), log);
+        assertSame(dense.smoothedLog(weight * 2), other);
+        for (int i = 3; i < 3 + LangProbMatrix.MAX_LOG_MATRICES; ++i) dense.smoothedLog(weight * i);
+        assertNotSame(dense.smoothedLog(weight * 2), other);
+    }
+
+    /**
+     * Test method for {@link SparseLangProbMatrix#toDense()}
+     */
+    @Test
+    public final void testToDense() {
+        DenseLangProbMatrix dense = new SparseLangProbMatrix(ROW_START, LANG_INDEX, PAIRS, 3).toDense();
+        assertFalse(dense.isFloat());
+        assertArrayEquals(dense.doubles(), VALUES, 0);
+
+        float[] floatPairs = { 0.1f, 0.3f, 0.6f };
+        DenseLangProbMatrix floats = new SparseLangProbMatrix(ROW_START, LANG_INDEX, floatPairs, 3).toDense();
+        assertTrue(floats.isFloat());
+        assertArrayEquals(floats.floats(), new float[] { 0.1f, 0.0f, 0.3f, 0.0f, 0.0f, 0.6f }, 0);
+    }
+
+    /**
+     * Illegal size test for {@link DenseLangProbMatrix#DenseLangProbMatrix(double[], int)}
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testIllegalSize() {
+        new DenseLangProbMatrix(new double[5], 2);
+    }
+
+    /**
+     * Illegal size test for {@link SparseLangProbMatrix#SparseLangProbMatrix(int[], short[], double[], int)}
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testIllegalSparseSize() {
+        new SparseLangProbMatrix(new int[] { 0, 2 }, new short[1], new double[1], 2);
+    }
+
+    /**
+     * Test method for {@link LangProbMatrix#selectLanguages(int[])}
+     */
+    @Test
+    public final void testSelectLanguages() {
+        int[] columns = { 2, 0 };
+        LangProbMatrix[] matrices = {
+            new DenseLangProbMatrix(VALUES, 3),
+            new DenseLangProbMatrix(new float[] { 0.1f, 0.0f, 0.3f, 0.0f, 0.0f, 0.6f }, 3),
+            new SparseLangProbMatrix(ROW_START, LANG_INDEX, PAIRS, 3),
+            new SparseLangProbMatrix(ROW_START, LANG_INDEX, new float[] { 0.1f, 0.3f, 0.6f }, 3),
+        };
+        for (LangProbMatrix matrix : matrices) {
+            LangProbMatrix view = matrix.selectLanguages(columns);
+            assertEquals(view.getClass(), matrix.getClass());
+            assertEquals(view.isFloat(), matrix.isFloat());
+            assertEquals(view.rows(), 2);
+            assertEquals(view.languages(), 2);
+            for (int row = 0; row < 2; ++row) {
+                for (int j = 0; j < columns.length; ++j) {
+                    assertEquals(view.get(row, j), matrix.get(row, columns[j]), 0);
+                }
+            }
+        }
+        SparseLangProbMatrix sparse = (SparseLangProbMatrix) matrices[2].selectLanguages(new int[] { 1 });
+        assertEquals(sparse.pairs(), 0);
+    }
+}
@@ -0,0 +1,56 @@
+package com.cybozu.labs.langdetect.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link NGramTable}.
+ * @author Alexis Meneses
+ *
+ */
+public class NGramTableTest {
+
+    /**
+     * Test method for {@link NGramTable#put(long)} and {@link NGramTable#get(long)}
+     */
+    @Test
+    public final void testPutGet() {
+        NGramTable table = new NGramTable();
+        assertEquals(table.get(NGram.encode("a")), -1);
+        assertEquals(table.get(0), -1);
+        assertEquals(table.put(NGram.encode("a")), 0);
+        assertEquals(table.put(NGram.encode("ab")), 1);
+        assertEquals(table.put(NGram.encode("a")), 0);
+        assertEquals(table.size(), 2);
+        assertEquals(table.get(NGram.encode("ab")), 1);
+        assertEquals(table.get(NGram.encode("abc")), -1);
+        assertEquals(table.keyOf(1), NGram.encode("ab"));
+    }
+
+    /**
+     * Test method for table growth
+     */
+    @Test
+    public final void testGrowth() {
+        NGramTable table = new NGramTable(4);
+        for (int i = 0; i < 100000; ++i) {
+            assertEquals(table.put(NGram.encode(Character.toString((char) (i % 60000 + 1)) + (i / 60000))), i);
+        }
+        assertEquals(table.size(), 100000);
+        for (int i = 0; i < 100000; ++i) {
+            assertEquals(table.get(NGram.encode(Character.toString((char) (i % 60000 + 1)) + (i / 60000))), i);
+        }
+        table.clear();
+        assertEquals(table.size(), 0);
+        assertEquals(table.get(NGram.encode("\u0001" + 0)), -1);
+    }
+
+    /**
+     * Illegal key test for {@link NGramTable#put(long)}
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testPutInvalidKey() {
+        new NGramTable().put(0);
+    }
+}
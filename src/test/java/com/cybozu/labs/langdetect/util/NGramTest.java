@@ -6,6 +6,9 @@ package com.cybozu.labs.langdetect.util;
 import static org.junit.Assert.*;
 
 import static org.hamcrest.CoreMatchers.is;
+
+import java.util.Map;
+
 import org.junit.Test;
 
 /**
@@ -89,6 +92,64 @@ public class NGramTest {
         assertEquals(NGram.normalize('\u021b'), '\u0163');
     }
 
+    /**
+     * Test method for {@link NGram#normalize(char)} over whole blocks
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public final void testNormalizeTable() {
+        for (Map.Entry<Character, Character> entry : NGram.cjk_map.entrySet()) {
+            assertEquals(NGram.normalize(entry.getKey()), entry.getValue().charValue());
+        }
+        for (char ch = '\uac00'; ch <= '\ud7a3'; ++ch) {
+            assertEquals(NGram.normalize(ch), '\uac00');
+        }
+        for (char ch = '\u3041'; ch <= '\u3096'; ++ch) {
+            assertEquals(NGram.normalize(ch), '\u3042');
+        }
+        assertEquals(NGram.normalize('\u2000'), ' ');
+        assertEquals(NGram.normalize('\u06cc'), '\u064a');
+        assertEquals(NGram.normalize('\u1ea0'), '\u1ec3');
+        assertEquals(NGram.normalize('\u1e9f'), '\u1e9f');
+        assertEquals(NGram.normalize('\uffff'), '\uffff');
+    }
+
+    /**
+     * Test method for {@link NGram#encode(CharSequence)} and {@link NGram#decode(long)}
+     */
+    @Test
+    public final void testEncode() {
+        assertEquals(NGram.encode(null), 0);
+        assertEquals(NGram.encode(""), 0);
+        assertEquals(NGram.encode("abcd"), 0);
+        assertTrue(NGram.encode("a") != NGram.encode(" a"));
+        assertTrue(NGram.encode(" a") != NGram.encode("  a"));
+        assertTrue(NGram.encode("\u0000a") != NGram.encode("a"));
+        assertEquals(NGram.decode(NGram.encode("A")), "A");
+        assertEquals(NGram.decode(NGram.encode(" A")), " A");
+        assertEquals(NGram.decode(NGram.encode("\uffff\u3042 ")), "\uffff\u3042 ");
+        assertEquals(NGram.decode(0), null);
+    }
+
+    /**
+     * Test method for {@link NGram#getKey(int)} and {@link NGram#reset()}
+     */
+    @Test
+    public final void testGetKey() {
+        NGram ngram = new NGram();
+        String text = "Ab  NASA c\u3044\u30a4 \u4E03d-e";
+        for (int i = 0; i < text.length(); ++i) {
+            ngram.addChar(text.charAt(i));
+            for (int n = 0; n <= NGram.N_GRAM + 1; ++n) {
+                assertEquals(ngram.getKey(n), NGram.encode(ngram.get(n)));
+            }
+        }
+        ngram.reset();
+        assertEquals(ngram.getKey(1), 0);
+        ngram.addChar('x');
+        assertEquals(ngram.getKey(2), NGram.encode(" x"));
+    }
+
     /**
      * Test method for {@link NGram#get(int)} and {@link NGram#addChar(char)}
      */
@@ -0,0 +1,144 @@
+package com.cybozu.labs.langdetect.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ScoringKernels}: the default kernels, vectorised when the Vector API is available,
+ * must match the scalar loops.
+ * @author Alexis Meneses
+ *
+ */
+public class ScoringKernelsTest {
+
+    private static double[] randomArray(Random rand, int length) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; ++i) array[i] = rand.nextDouble() * Math.pow(10, -rand.nextInt(8));
+        return array;
+    }
+
+    /**
+     * The build runs the tests with the Vector API on Java 16+, so the vectorised kernels must be loaded then.
+     */
+    @Test
+    public final void testVectorized() {
+        if (Boolean.getBoolean("langdetect.test.vector")) {
+            assertTrue(ScoringKernels.isVectorized());
+        }
+    }
+
+    /**
+     * Test method for {@link ScoringKernels#multiply(double[], double[], int, int, double)}
+     * and {@link ScoringKernels#add(double[], double[], int, int)} and their float versions,
+     * on every length up to a few vectors and odd offsets, so that the vector tails are covered
+     */
+    @Test
+    public final void testTails() {
+        Random rand = new Random(4);
+        for (int length = 1; length < 70; ++length) {
+            int offset = 2 * length + 1;
+            double[] row = randomArray(rand, offset + length);
+            float[] floatRow = new float[row.length];
+            for (int i = 0; i < row.length; ++i) floatRow[i] = (float) row[i];
+
+            double[] prob = randomArray(rand, length);
+            double[] floatProb = prob.clone();
+            double[] expected = prob.clone();
+            double[] floatExpected = prob.clone();
+            ScoringKernels.multiply(prob, row, offset, length, 0.00005);
+            ScoringKernels.multiply(floatProb, floatRow, offset, length, 0.00005);
+            for (int i = 0; i < length; ++i) {
+                expected[i] *= 0.00005 + row[offset + i];
+                floatExpected[i] *= 0.00005 + floatRow[offset + i];
+            }
+            assertArrayEquals(expected, prob, 0);
+            assertArrayEquals(floatExpected, floatProb, 0);
+
+            ScoringKernels.add(prob, row, offset, length);
+            ScoringKernels.add(floatProb, floatRow, offset, length);
+            for (int i = 0; i < length; ++i) {
+                expected[i] += row[offset + i];
+                floatExpected[i] += floatRow[offset + i];
+            }
+            assertArrayEquals(expected, prob, 0);
+            assertArrayEquals(floatExpected, floatProb, 0);
+        }
+    }
+
+    /**
+     * Test method for {@link ScoringKernels#normalize(double[], int)}
+     */
+    @Test
+    public final void testNormalize() {
+        Random rand = new Random(1);
+        for (int length = 1; length < 300; length += length < 70 ? 1 : 7) {
+            double[] prob = randomArray(rand, length);
+            double[] expected = prob.clone();
+            double max = ScoringKernels.normalize(prob, length);
+            double expectedMax = ScoringKernels.normalizeScalar(expected, length);
+            assertEquals(max, expectedMax, 1e-14);
+            for (int i = 0; i < length; ++i) {
+                assertEquals(prob[i], expected[i], 1e-14);
+            }
+        }
+    }
+
+    /**
+     * Test method for {@link ScoringKernels#multiply(double[], double[], int, int, double)}
+     * and {@link ScoringKernels#add(double[], double[], int, int)}
+     */
+    @Test
+    public final void testMultiplyAdd() {
+        Random rand = new Random(2);
+        int length = 53;
+        double[] row = randomArray(rand, length * 3);
+        float[] floatRow = new float[row.length];
+        for (int i = 0; i < row.length; ++i) floatRow[i] = (float) row[i];
+
+        double[] prob = randomArray(rand, length);
+        double[] floatProb = prob.clone();
+        double[] expected = prob.clone();
+        ScoringKernels.multiply(prob, row, length, length, 0.00005);
+        ScoringKernels.multiply(floatProb, floatRow, length, length, 0.00005);
+        for (int i = 0; i < length; ++i) expected[i] *= 0.00005 + row[length + i];
+        for (int i = 0; i < length; ++i) {
+            assertEquals(prob[i], expected[i], 0);
+            assertEquals(floatProb[i], expected[i], 1e-6 * expected[i]);
+        }
+
+        double[] score = new double[length];
+        ScoringKernels.add(score, row, length * 2, length);
+        for (int i = 0; i < length; ++i) assertEquals(score[i], row[length * 2 + i], 0);
+    }
+
+    /**
+     * Test method for the kernels restricted to some languages
+     */
+    @Test
+    public final void testSelectedLanguages() {
+        Random rand = new Random(3);
+        int length = 53;
+        int[] langs = { 2, 7, 30, 52 };
+        double[] row = randomArray(rand, length * 2);
+        double[] prob = new double[length];
+        for (int l : langs) prob[l] = rand.nextDouble();
+        double[] expected = prob.clone();
+
+        ScoringKernels.multiply(prob, row, length, langs, langs.length, 0.00005);
+        ScoringKernels.multiply(expected, row, length, length, 0.00005);
+        for (int i = 0; i < length; ++i) assertEquals(prob[i], expected[i], 0);
+
+        double max = ScoringKernels.normalize(prob, langs, langs.length);
+        assertEquals(max, ScoringKernels.normalizeScalar(expected, length), 1e-14);
+        for (int i = 0; i < length; ++i) assertEquals(prob[i], expected[i], 1e-14);
+
+        double[] score = new double[length];
+        ScoringKernels.add(score, row, length, langs, 2);
+        for (int i = 0; i < length; ++i) {
+            assertEquals(score[i], i == 2 || i == 7 ? row[length + i] : 0, 0);
+        }
+    }
+}
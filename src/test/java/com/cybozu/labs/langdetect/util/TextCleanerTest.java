@@ -0,0 +1,116 @@
+package com.cybozu.labs.langdetect.util;
+
+import static org.junit.Assert.*;
+
+import java.lang.Character.UnicodeBlock;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link TextCleaner}.
+ * @author Alexis Meneses
+ *
+ */
+public class TextCleanerTest {
+
+    private static final Pattern URL_REGEX = Pattern.compile("https?://[-_.?&~;+=/#0-9A-Za-z]{1,2076}");
+    private static final Pattern MAIL_REGEX = Pattern.compile("[-_.0-9A-Za-z]{1,64}@[-_0-9A-Za-z]{1,255}[-_.0-9A-Za-z]{1,255}");
+
+    /** pieces random texts are made of */
+    private static final String[] PIECES = {
+        "http://", "https://", "http:/", "http", "s", ":", "/", "@", ".", "-", "_", "?", "#", " ", "  ",
+        "a", "e", "x", "Z", "0", "\u00e2", "\u01b0", "\u0300", "\u0301", "\u0323", "\u0302",
+        "\u3042", "\u4e00", "\u0410", "\u1e00", "\u1ef9", "\n", "\t",
+    };
+
+    /**
+     * The cleaning pipeline {@link TextCleaner} replaces
+     */
+    private static String reference(String text, int maxLength, int[] counts) {
+        text = URL_REGEX.matcher(text).replaceAll(" ");
+        text = MAIL_REGEX.matcher(text).replaceAll(" ");
+        text = NGram.normalize_vi(text);
+        StringBuilder out = new StringBuilder();
+        char pre = 0;
+        for (int i = 0; i < text.length() && i < maxLength; ++i) {
+            char c = text.charAt(i);
+            if (c != ' ' || pre != ' ') out.append(c);
+            pre = c;
+        }
+        for (int i = 0; i < out.length(); ++i) {
+            char c = out.charAt(i);
+            if (c <= 'z' && c >= 'A') {
+                ++counts[0];
+            } else if (c >= '\u0300' && UnicodeBlock.of(c) != UnicodeBlock.LATIN_EXTENDED_ADDITIONAL) {
+                ++counts[1];
+            }
+        }
+        return out.toString();
+    }
+
+    private static void assertCleaned(String text, int maxLength) {
+        int[] counts = new int[2];
+        String expected = reference(text, maxLength, counts);
+        TextCleaner cleaner = new TextCleaner();
+        StringBuilder out = new StringBuilder();
+        cleaner.append(text, out, maxLength, (char) 0);
+        assertEquals(expected, out.toString());
+        assertEquals(counts[0], cleaner.getLatinCount());
+        assertEquals(counts[1], cleaner.getNonLatinCount());
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < count; ++i) buf.append(s);
+        return buf.toString();
+    }
+
+    @Test
+    public final void testAppend() {
+        assertCleaned("Hello  world", 10000);
+        assertCleaned("see http://example.com/foo?a=1#x or https://b.org", 10000);
+        assertCleaned("mail me@example.org, or a@b, or a@bc, or a@b.c today", 10000);
+        assertCleaned("Vie\u0302\u0323t Nam, ti\u00ea\u0301ng Vi\u00ea\u0323t", 10000);
+        assertCleaned("\u3053\u308c\u306f a test", 10000);
+        assertCleaned("abcdef  ghij", 5);
+        assertCleaned("a\u0301bc", 1);
+        assertCleaned("x@yhttp://z.com", 10000);
+        assertCleaned("x@y.zhttps://z.com", 10000);
+        assertCleaned("x@yyhttp://z.com", 10000);
+    }
+
+    @Test
+    public final void testLimits() {
+        assertCleaned("http://" + repeat("a", 3000) + "@b.c", 10000);
+        assertCleaned(repeat("a", 100) + "@b.c", 10000);
+        assertCleaned(repeat("a", 64) + "@b.c", 10000);
+        assertCleaned(repeat("a", 65) + "@b.c", 10000);
+        assertCleaned("a@" + repeat("b", 300) + " x", 10000);
+        assertCleaned("a@" + repeat("b", 255) + " x", 10000);
+        assertCleaned("a@" + repeat("b", 256) + " x", 10000);
+        assertCleaned("a@b" + repeat(".c", 200) + " x", 10000);
+        assertCleaned(repeat("a", 100) + "@b.c", 20);
+        assertCleaned(repeat("a", 100) + "@b.c", 40);
+    }
+
+    @Test
+    public final void testRandom() {
+        Random rand = new Random(1);
+        int[] maxLengths = { 1, 7, 30, 10000 };
+        for (int t = 0; t < 20000; ++t) {
+            StringBuilder text = new StringBuilder();
+            int pieces = rand.nextInt(40);
+            for (int i = 0; i < pieces; ++i) {
+                if (rand.nextInt(50) == 0) {
+                    // long runs around the pattern limits
+                    text.append(repeat(rand.nextBoolean() ? "a" : "b.", 30 + rand.nextInt(300)));
+                } else {
+                    text.append(PIECES[rand.nextInt(PIECES.length)]);
+                }
+            }
+            assertCleaned(text.toString(), maxLengths[rand.nextInt(maxLengths.length)]);
+        }
+    }
+}